@@ -0,0 +1,292 @@
+package backend;
+
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
+
+import models.Book;
+import models.BorrowedBook;
+import models.CirculationStats;
+import models.DailyLoans;
+import models.LoanCount;
+import models.User;
+
+// Non-blocking version of DBManager: same operations, each returns a CompletableFuture and runs on its own
+// virtual thread. Callers can fire off as many as they like without tying up platform threads.
+// At most as many run at once as there are connections to run them on (read pool size for reads, one for
+// writes, more with group commit). The SQLite driver blocks in native code, which pins the carrier thread,
+// so letting hundreds of virtual threads into the pool at once would just starve the scheduler.
+// cancel(), orTimeout() or completeExceptionally() on the returned future stop the operation: a queued one
+// never starts, a running one gets its statement aborted (ConnectionPool.cancel) and its result dropped.
+// That only works on the future returned here, not on ones derived from it with thenApply etc.
+// Results and errors are the same as DBManager's (which mostly prints errors and returns empty results).
+public class AsyncDBManager {
+    private static final ExecutorService EXECUTOR =
+            Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("db-async-", 0).factory());
+    private static final Semaphore READS = new Semaphore(Math.max(1, DBConfig.poolSize()), true);
+    private static final Semaphore WRITES = new Semaphore(DBConfig.groupCommit() ? DBConfig.groupCommitMaxBatch() : 1, true);
+    private static final long TIMEOUT_MS = DBConfig.asyncTimeoutMs();
+
+    private AsyncDBManager() {}
+
+    // any read-only work on DBManager (or a custom combination of calls), limited like the reads below
+    public static <T> CompletableFuture<T> read(Supplier<T> op) {
+        return submit(READS, op);
+    }
+
+    public static <T> CompletableFuture<T> write(Supplier<T> op) {
+        return submit(WRITES, op);
+    }
+
+    private static CompletableFuture<Void> write(Runnable op) {
+        return submit(WRITES, () -> {
+            op.run();
+            return null;
+        });
+    }
+
+    private static <T> CompletableFuture<T> submit(Semaphore limit, Supplier<T> op) {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        AtomicReference<Thread> worker = new AtomicReference<>();
+        EXECUTOR.execute(() -> {
+            if (result.isDone()) {
+                return; // cancelled while queued
+            }
+            try {
+                limit.acquire();
+            } catch (InterruptedException e) {
+                return;
+            }
+            T value = null;
+            Throwable error = null;
+            try {
+                worker.set(Thread.currentThread());
+                if (result.isDone()) {
+                    return;
+                }
+                value = op.get();
+            } catch (Throwable t) {
+                error = t;
+            } finally {
+                worker.set(null); // before completing, so whenComplete below leaves this thread alone
+                limit.release();
+            }
+            if (error != null) {
+                result.completeExceptionally(error);
+            } else {
+                result.complete(value);
+            }
+        });
+        // completed by someone else (cancel, timeout...) while still running: stop the query
+        result.whenComplete((value, error) -> {
+            Thread running = worker.get();
+            if (error != null && running != null) {
+                running.interrupt();
+                DBManager.cancelRunning(running);
+            }
+        });
+        if (TIMEOUT_MS > 0) {
+            result.orTimeout(TIMEOUT_MS, TimeUnit.MILLISECONDS);
+        }
+        return result;
+    }
+
+    // C
+    public static CompletableFuture<Void> addUser(String firstName, String lastName, String email, String phone) {
+        return write(() -> DBManager.addUser(firstName, lastName, email, phone));
+    }
+
+    public static CompletableFuture<Void> addBook(String title, String author, int year, String isbn) {
+        return write(() -> DBManager.addBook(title, author, year, isbn));
+    }
+
+    // R
+    public static CompletableFuture<List<User>> getAllUsers() {
+        return read(DBManager::getAllUsers);
+    }
+
+    public static CompletableFuture<List<User>> searchUsers(String keyword, int offset, int limit) {
+        return read(() -> DBManager.searchUsers(keyword, offset, limit));
+    }
+
+    public static CompletableFuture<List<User>> lookupUsers(String text, int limit) {
+        return read(() -> DBManager.lookupUsers(text, limit));
+    }
+
+    public static CompletableFuture<List<Book>> getAllBooks() {
+        return read(DBManager::getAllBooks);
+    }
+
+    public static CompletableFuture<List<Book>> searchBooks(String keyword, int offset, int limit) {
+        return read(() -> DBManager.searchBooks(keyword, offset, limit));
+    }
+
+    public static CompletableFuture<List<BorrowedBook>> getBorrowedBooks() {
+        return read(DBManager::getBorrowedBooks);
+    }
+
+    public static CompletableFuture<Book> getBook(int id) {
+        return read(() -> DBManager.getBook(id));
+    }
+
+    public static CompletableFuture<User> getUser(int id) {
+        return read(() -> DBManager.getUser(id));
+    }
+
+    public static CompletableFuture<Integer> countUsers() {
+        return read(DBManager::countUsers);
+    }
+
+    public static CompletableFuture<Integer> countUsersUpTo(long id) {
+        return read(() -> DBManager.countUsersUpTo(id));
+    }
+
+    public static CompletableFuture<List<User>> getUsersPage(long afterId, int limit) {
+        return read(() -> DBManager.getUsersPage(afterId, limit));
+    }
+
+    public static CompletableFuture<Long> findUserIdAfter(long afterId, int offset) {
+        return read(() -> DBManager.findUserIdAfter(afterId, offset));
+    }
+
+    public static CompletableFuture<Integer> countBooks() {
+        return read(DBManager::countBooks);
+    }
+
+    public static CompletableFuture<Integer> countBooksUpTo(long id) {
+        return read(() -> DBManager.countBooksUpTo(id));
+    }
+
+    public static CompletableFuture<List<Book>> getBooksPage(long afterId, int limit) {
+        return read(() -> DBManager.getBooksPage(afterId, limit));
+    }
+
+    public static CompletableFuture<Long> findBookIdAfter(long afterId, int offset) {
+        return read(() -> DBManager.findBookIdAfter(afterId, offset));
+    }
+
+    public static CompletableFuture<Integer> countBorrowedBooks() {
+        return read(DBManager::countBorrowedBooks);
+    }
+
+    public static CompletableFuture<Integer> countBorrowedBooksUpTo(long loanId) {
+        return read(() -> DBManager.countBorrowedBooksUpTo(loanId));
+    }
+
+    public static CompletableFuture<List<BorrowedBook>> getBorrowedBooksPage(long afterLoanId, int limit) {
+        return read(() -> DBManager.getBorrowedBooksPage(afterLoanId, limit));
+    }
+
+    public static CompletableFuture<Long> findLoanIdAfter(long afterLoanId, int offset) {
+        return read(() -> DBManager.findLoanIdAfter(afterLoanId, offset));
+    }
+
+    public static CompletableFuture<List<BorrowedBook>> getActiveLoans() {
+        return read(DBManager::getActiveLoans);
+    }
+
+    public static CompletableFuture<Integer> countActiveLoans() {
+        return read(DBManager::countActiveLoans);
+    }
+
+    public static CompletableFuture<Integer> countActiveLoansUpTo(long bookId) {
+        return read(() -> DBManager.countActiveLoansUpTo(bookId));
+    }
+
+    public static CompletableFuture<List<BorrowedBook>> getActiveLoansPage(long afterBookId, int limit) {
+        return read(() -> DBManager.getActiveLoansPage(afterBookId, limit));
+    }
+
+    public static CompletableFuture<Long> findActiveLoanBookIdAfter(long afterBookId, int offset) {
+        return read(() -> DBManager.findActiveLoanBookIdAfter(afterBookId, offset));
+    }
+
+    public static CompletableFuture<Integer> countLoanHistory() {
+        return read(DBManager::countLoanHistory);
+    }
+
+    public static CompletableFuture<Integer> countLoanHistoryUpTo(long loanId) {
+        return read(() -> DBManager.countLoanHistoryUpTo(loanId));
+    }
+
+    public static CompletableFuture<List<BorrowedBook>> getLoanHistoryPage(long afterLoanId, int limit) {
+        return read(() -> DBManager.getLoanHistoryPage(afterLoanId, limit));
+    }
+
+    public static CompletableFuture<Long> findHistoryLoanIdAfter(long afterLoanId, int offset) {
+        return read(() -> DBManager.findHistoryLoanIdAfter(afterLoanId, offset));
+    }
+
+    public static CompletableFuture<List<BorrowedBook>> getLoansBorrowedBetween(Instant from, Instant to, int limit) {
+        return read(() -> DBManager.getLoansBorrowedBetween(from, to, limit));
+    }
+
+    public static CompletableFuture<List<BorrowedBook>> getOverdueLoans(int limit) {
+        return read(() -> DBManager.getOverdueLoans(limit));
+    }
+
+    public static CompletableFuture<Integer> countOverdueLoans() {
+        return read(DBManager::countOverdueLoans);
+    }
+
+    public static CompletableFuture<CirculationStats> getCirculationStats() {
+        return read(DBManager::getCirculationStats);
+    }
+
+    public static CompletableFuture<List<LoanCount>> getMostBorrowedBooks(int limit) {
+        return read(() -> DBManager.getMostBorrowedBooks(limit));
+    }
+
+    public static CompletableFuture<List<LoanCount>> getMostActiveUsers(int limit) {
+        return read(() -> DBManager.getMostActiveUsers(limit));
+    }
+
+    public static CompletableFuture<List<DailyLoans>> getDailyLoans(LocalDate from, LocalDate to) {
+        return read(() -> DBManager.getDailyLoans(from, to));
+    }
+
+    public static CompletableFuture<List<Integer>> findAvailabilityMismatches() {
+        return read(DBManager::findAvailabilityMismatches);
+    }
+
+    // U
+    public static CompletableFuture<Void> updateUser(int id, String firstName, String lastName, String email, String phone) {
+        return write(() -> DBManager.updateUser(id, firstName, lastName, email, phone));
+    }
+
+    public static CompletableFuture<Void> updateBook(int id, String title, String author, int year, String isbn) {
+        return write(() -> DBManager.updateBook(id, title, author, year, isbn));
+    }
+
+    public static CompletableFuture<BorrowResult> tryBorrow(int bookId, int userId) {
+        return write(() -> DBManager.tryBorrow(bookId, userId));
+    }
+
+    public static CompletableFuture<Integer> returnBook(int bookId) {
+        return write(() -> DBManager.returnBook(bookId));
+    }
+
+    public static CompletableFuture<Integer> rebuildAvailability() {
+        return write(DBManager::rebuildAvailability);
+    }
+
+    public static CompletableFuture<Void> rebuildStatistics() {
+        return write(DBManager::rebuildStatistics);
+    }
+
+    // D
+    public static CompletableFuture<Void> deleteUser(int id) {
+        return write(() -> DBManager.deleteUser(id));
+    }
+
+    public static CompletableFuture<Void> deleteBook(int id) {
+        return write(() -> DBManager.deleteBook(id));
+    }
+}
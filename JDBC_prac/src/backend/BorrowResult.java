@@ -0,0 +1,10 @@
+package backend;
+
+// outcome of DBManager.tryBorrow
+public enum BorrowResult {
+    BORROWED,      // loan created
+    ALREADY_LENT,  // the book has an open loan already, nothing written
+    NOT_FOUND,     // no such book or user (deleted meanwhile?), nothing written
+    BUSY,          // database stayed locked through all retries, nothing written
+    FAILED         // any other error (broken db...), see console
+}
@@ -0,0 +1,143 @@
+package backend;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+// Stress check for tryBorrow: lots of threads try to borrow the same books at the same moment while a second,
+// "foreign" connection keeps grabbing the write lock (like another app instance on the same file would).
+// At the end no book may have more than one winner, and every book has as many open loans as winners.
+// A book whose borrowers all gave up with BUSY has neither, that's reported but not a failure.
+// Run it against a scratch db, it creates its own books/users and leaves them lent out:
+//     java -Dlibrary.db.url=jdbc:sqlite:database/stress.db backend.BorrowStress [threads] [books]
+public class BorrowStress {
+
+    public static void main(String[] args) throws Exception {
+        int threads = args.length > 0 ? Integer.parseInt(args[0]) : 32;
+        int books = args.length > 1 ? Integer.parseInt(args[1]) : 200;
+
+        DBManager.createTables();
+        String run = Long.toString(System.currentTimeMillis(), 36);
+        int firstUser = 0;
+        int firstBook = 0;
+        for (int i = 0; i < threads; i++) {
+            DBManager.addUser("Stress", "User" + i, "stress-" + run + "-" + i + "@example.com", null);
+        }
+        for (int i = 0; i < books; i++) {
+            DBManager.addBook("Stress Book " + i, "Stress", 2000, "stress-" + run + "-" + i);
+        }
+        try (Connection conn = DBManager.connect();
+             Statement stmt = conn.createStatement()) {
+            ResultSet rs = stmt.executeQuery("SELECT MIN(id) FROM users WHERE email LIKE 'stress-" + run + "-%'");
+            firstUser = rs.getInt(1);
+            rs = stmt.executeQuery("SELECT MIN(id) FROM books WHERE isbn LIKE 'stress-" + run + "-%'");
+            firstBook = rs.getInt(1);
+        }
+
+        AtomicIntegerArray winners = new AtomicIntegerArray(books);
+        Map<BorrowResult, Integer> totals = new EnumMap<>(BorrowResult.class);
+        AtomicBoolean done = new AtomicBoolean();
+        Thread lockHog = startLockHog(done);
+
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        CountDownLatch start = new CountDownLatch(1);
+        long began = System.nanoTime();
+        for (int t = 0; t < threads; t++) {
+            int userId = firstUser + t;
+            int bookBase = firstBook;
+            pool.execute(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                for (int b = 0; b < books; b++) {
+                    BorrowResult result = DBManager.tryBorrow(bookBase + b, userId);
+                    if (result == BorrowResult.BORROWED) {
+                        winners.incrementAndGet(b);
+                    }
+                    synchronized (totals) {
+                        totals.merge(result, 1, Integer::sum);
+                    }
+                }
+            });
+        }
+        start.countDown();
+        pool.shutdown();
+        pool.awaitTermination(10, TimeUnit.MINUTES);
+        long ms = (System.nanoTime() - began) / 1_000_000;
+        done.set(true);
+        lockHog.join();
+
+        int[] openLoans = new int[books];
+        try (Connection conn = DBManager.connect();
+             PreparedStatement pstmt = conn.prepareStatement("SELECT book_id, COUNT(*) FROM borrowed_books "
+                     + "WHERE book_id BETWEEN ? AND ? AND return_date IS NULL GROUP BY book_id")) {
+            pstmt.setInt(1, firstBook);
+            pstmt.setInt(2, firstBook + books - 1);
+            ResultSet rs = pstmt.executeQuery();
+            while (rs.next()) {
+                openLoans[rs.getInt(1) - firstBook] = rs.getInt(2);
+            }
+        }
+        int doubleLent = 0;
+        int mismatched = 0;
+        int notLent = 0;
+        for (int b = 0; b < books; b++) {
+            if (winners.get(b) > 1) {
+                doubleLent++;
+            }
+            if (openLoans[b] != winners.get(b)) {
+                mismatched++;
+            }
+            if (winners.get(b) == 0) {
+                notLent++;
+            }
+        }
+
+        System.out.println(threads + " threads x " + books + " books in " + ms + "ms: " + totals);
+        System.out.println("books with more than one winner: " + doubleLent + ", open loans != winners: " + mismatched
+                + ", nobody got through (all BUSY): " + notLent);
+        System.out.println(doubleLent == 0 && mismatched == 0 ? "OK" : "FAILED");
+        DBManager.shutdown();
+        if (doubleLent != 0 || mismatched != 0) {
+            System.exit(1);
+        }
+    }
+
+    // separate connection outside the pools that holds the write lock for a few ms over and over,
+    // so tryBorrow actually runs into SQLITE_BUSY and has to retry
+    private static Thread startLockHog(AtomicBoolean done) {
+        Thread t = new Thread(() -> {
+            try (Connection conn = DriverManager.getConnection(DBConfig.url());
+                 Statement stmt = conn.createStatement()) {
+                stmt.execute("PRAGMA busy_timeout = 0");
+                while (!done.get()) {
+                    try {
+                        stmt.execute("BEGIN IMMEDIATE");
+                        Thread.sleep(20);
+                        stmt.execute("COMMIT");
+                    } catch (SQLException e) {
+                        // the pool writer has the lock right now, fine
+                    }
+                    Thread.sleep(50);
+                }
+            } catch (SQLException | InterruptedException e) {
+                System.out.println("lock hog stopped: " + e.getMessage());
+            }
+        }, "lock-hog");
+        t.start();
+        return t;
+    }
+}
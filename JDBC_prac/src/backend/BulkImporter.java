@@ -0,0 +1,315 @@
+package backend;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+// Bulk loader for books and users from CSV. Reads the file as a stream, inserts with addBatch/executeBatch
+// on the writer connection and commits once commitEvery rows were written, so millions of rows load in
+// minutes instead of one autocommitted INSERT per row. Duplicate ISBNs/emails are skipped (or updated with
+// --upsert) instead of failing the whole import, broken lines are reported and skipped.
+//
+// usage: java backend.BulkImporter books|users <file.csv> [--batch 5000] [--commit N] [--upsert]
+//   books.csv: title,author,year,isbn      users.csv: first_name,last_name,email,phone
+//   a first line matching those column names is treated as header and skipped
+//   --commit defaults to the batch size, i.e. every batch is its own transaction. A bigger --commit saves
+//   some commits (fsyncs), but the import holds the write lock for the whole transaction, so the desks wait
+//   that long to borrow or return anything, and a batch that fails rolls back every uncommitted batch
+//   before it. Only worth it when nobody else uses the database during the import.
+public class BulkImporter {
+
+    public enum Mode { SKIP_DUPLICATES, UPSERT }
+
+    private static final String INSERT_BOOK = "INSERT INTO books (title, author, year, isbn) VALUES (?, ?, ?, ?) "
+            + "ON CONFLICT(isbn) DO NOTHING";
+    private static final String UPSERT_BOOK = "INSERT INTO books (title, author, year, isbn) VALUES (?, ?, ?, ?) "
+            + "ON CONFLICT(isbn) DO UPDATE SET title = excluded.title, author = excluded.author, year = excluded.year";
+    private static final String INSERT_USER = "INSERT INTO users (first_name, last_name, email, phone) VALUES (?, ?, ?, ?) "
+            + "ON CONFLICT(email) DO NOTHING";
+    private static final String UPSERT_USER = "INSERT INTO users (first_name, last_name, email, phone) VALUES (?, ?, ?, ?) "
+            + "ON CONFLICT(email) DO UPDATE SET first_name = excluded.first_name, last_name = excluded.last_name, phone = excluded.phone";
+
+    private static final String[] BOOK_COLUMNS = {"title", "author", "year", "isbn"};
+    private static final String[] USER_COLUMNS = {"first_name", "last_name", "email", "phone"};
+
+    // only the first few problems are printed one by one, the rest just get counted
+    private static final int MAX_REPORTED = 20;
+
+    public static class Result {
+        public long read;
+        public long written;     // inserted, or inserted/updated in UPSERT mode
+        public long duplicates;  // skipped because the isbn/email already exists (SKIP_DUPLICATES only)
+        public long invalid;     // lines that couldn't be parsed
+        public long millis;
+
+        @Override
+        public String toString() {
+            return String.format("%d rows read, %d written, %d duplicates skipped, %d invalid, %.1fs (%.0f rows/s)",
+                    read, written, duplicates, invalid, millis / 1000.0, millis == 0 ? 0.0 : read * 1000.0 / millis);
+        }
+    }
+
+    private final int batchSize;
+    private final int commitEvery;
+    private final Mode mode;
+
+    public BulkImporter(int batchSize, int commitEvery, Mode mode) {
+        this.batchSize = Math.max(1, batchSize);
+        this.commitEvery = Math.max(this.batchSize, commitEvery);
+        this.mode = mode;
+    }
+
+    public Result importBooks(Reader in) throws IOException, SQLException {
+        return load(in, mode == Mode.UPSERT ? UPSERT_BOOK : INSERT_BOOK, BOOK_COLUMNS, (pstmt, f) -> {
+            pstmt.setString(1, required(f[0], "title"));
+            pstmt.setString(2, required(f[1], "author"));
+            pstmt.setInt(3, Integer.parseInt(f[2].trim()));
+            pstmt.setString(4, required(f[3], "isbn"));
+            return f[3].trim();
+        });
+    }
+
+    public Result importUsers(Reader in) throws IOException, SQLException {
+        return load(in, mode == Mode.UPSERT ? UPSERT_USER : INSERT_USER, USER_COLUMNS, (pstmt, f) -> {
+            pstmt.setString(1, required(f[0], "first_name"));
+            pstmt.setString(2, required(f[1], "last_name"));
+            pstmt.setString(3, required(f[2], "email"));
+            pstmt.setString(4, f[3].trim());
+            return f[2].trim();
+        });
+    }
+
+    // binds one CSV record, returns its unique key (isbn/email) for duplicate reporting
+    private interface Binder {
+        String bind(PreparedStatement pstmt, String[] fields) throws SQLException;
+    }
+
+    private Result load(Reader in, String sql, String[] columns, Binder binder) throws IOException, SQLException {
+        Result result = new Result();
+        long start = System.currentTimeMillis();
+        long lastReport = start;
+        long reported = 0;
+        CsvReader csv = new CsvReader(in);
+        List<String> batchKeys = new ArrayList<>(batchSize);
+
+        try (Connection conn = DBManager.connectWriter()) {
+            if (conn == null) {
+                throw new SQLException("no writer connection");
+            }
+            conn.setAutoCommit(false);
+            try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+                String[] fields;
+                long uncommitted = 0;
+                boolean first = true;
+                while ((fields = csv.next()) != null) {
+                    if (first) {
+                        first = false;
+                        if (isHeader(fields, columns)) {
+                            continue;
+                        }
+                    }
+                    result.read++;
+                    try {
+                        if (fields.length != columns.length) {
+                            throw new IllegalArgumentException("expected " + columns.length + " columns, got " + fields.length);
+                        }
+                        batchKeys.add(binder.bind(pstmt, fields));
+                        pstmt.addBatch();
+                    } catch (IllegalArgumentException | SQLException e) {
+                        result.invalid++;
+                        pstmt.clearParameters();
+                        if (reported++ < MAX_REPORTED) {
+                            System.out.println("line " + csv.lineNumber() + " skipped: " + e.getMessage());
+                        }
+                        continue;
+                    }
+
+                    if (batchKeys.size() < batchSize) {
+                        continue;
+                    }
+                    long written = result.written;
+                    reported += flush(pstmt, batchKeys, result, reported);
+                    uncommitted += result.written - written; // duplicates don't count
+                    // a batch of nothing but duplicates still holds the write lock, end that transaction too
+                    if (uncommitted >= commitEvery || uncommitted == 0) {
+                        conn.commit();
+                        uncommitted = 0;
+                        long now = System.currentTimeMillis();
+                        if (now - lastReport >= 1000) {
+                            lastReport = now;
+                            printProgress(result, now - start);
+                        }
+                    }
+                }
+                reported += flush(pstmt, batchKeys, result, reported);
+                conn.commit();
+            } catch (SQLException | IOException | RuntimeException e) {
+                conn.rollback();
+                throw e;
+            } finally {
+                conn.setAutoCommit(true);
+                DBManager.clearCache(); // whatever got committed so far
+            }
+        }
+
+        result.millis = System.currentTimeMillis() - start;
+        if (reported > MAX_REPORTED) {
+            System.out.println("(" + (reported - MAX_REPORTED) + " more problems not shown)");
+        }
+        return result;
+    }
+
+    // runs the pending batch, returns how many duplicates were printed
+    private int flush(PreparedStatement pstmt, List<String> keys, Result result, long alreadyReported) throws SQLException {
+        if (keys.isEmpty()) {
+            return 0;
+        }
+        int printed = 0;
+        int[] counts = pstmt.executeBatch();
+        for (int i = 0; i < counts.length; i++) {
+            if (counts[i] == 0) {
+                result.duplicates++;
+                if (alreadyReported + printed < MAX_REPORTED) {
+                    System.out.println("duplicate skipped: " + keys.get(i));
+                }
+                printed++;
+            } else {
+                result.written++;
+            }
+        }
+        keys.clear();
+        return printed;
+    }
+
+    private static void printProgress(Result result, long elapsedMs) {
+        System.out.printf("%,d rows (%,.0f rows/s)%n", result.read, result.read * 1000.0 / Math.max(1, elapsedMs));
+    }
+
+    private static boolean isHeader(String[] fields, String[] columns) {
+        if (fields.length != columns.length) {
+            return false;
+        }
+        for (int i = 0; i < columns.length; i++) {
+            if (!fields[i].trim().equalsIgnoreCase(columns[i])) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static String required(String value, String column) {
+        String trimmed = value.trim();
+        if (trimmed.isEmpty()) {
+            throw new IllegalArgumentException(column + " is empty");
+        }
+        return trimmed;
+    }
+
+    // minimal RFC 4180 reader: commas, "quoted" fields, "" for a quote, newlines inside quotes
+    static class CsvReader {
+        private final BufferedReader in;
+        private long line;
+
+        CsvReader(Reader in) {
+            this.in = in instanceof BufferedReader b ? b : new BufferedReader(in, 1 << 16);
+        }
+
+        long lineNumber() {
+            return line;
+        }
+
+        // next record, null at end of input. blank lines are skipped
+        String[] next() throws IOException {
+            String text;
+            do {
+                text = in.readLine();
+                if (text == null) {
+                    return null;
+                }
+                line++;
+            } while (text.isBlank());
+
+            List<String> fields = new ArrayList<>();
+            StringBuilder field = new StringBuilder();
+            boolean quoted = false;
+            int i = 0;
+            while (true) {
+                if (i == text.length()) {
+                    if (!quoted) {
+                        break;
+                    }
+                    // quoted field spans lines
+                    String more = in.readLine();
+                    if (more == null) {
+                        break;
+                    }
+                    line++;
+                    field.append('\n');
+                    text = more;
+                    i = 0;
+                    continue;
+                }
+                char c = text.charAt(i++);
+                if (quoted) {
+                    if (c == '"') {
+                        if (i < text.length() && text.charAt(i) == '"') {
+                            field.append('"');
+                            i++;
+                        } else {
+                            quoted = false;
+                        }
+                    } else {
+                        field.append(c);
+                    }
+                } else if (c == '"') {
+                    quoted = true;
+                } else if (c == ',') {
+                    fields.add(field.toString());
+                    field.setLength(0);
+                } else {
+                    field.append(c);
+                }
+            }
+            fields.add(field.toString());
+            return fields.toArray(new String[0]);
+        }
+    }
+
+    public static void main(String[] args) {
+        if (args.length < 2 || !(args[0].equals("books") || args[0].equals("users"))) {
+            System.out.println("usage: BulkImporter books|users <file.csv> [--batch N] [--commit N] [--upsert]");
+            return;
+        }
+        int batch = 5_000;
+        int commit = 0; // = batch
+        Mode mode = Mode.SKIP_DUPLICATES;
+        for (int i = 2; i < args.length; i++) {
+            switch (args[i]) {
+                case "--batch" -> batch = Integer.parseInt(args[++i]);
+                case "--commit" -> commit = Integer.parseInt(args[++i]);
+                case "--upsert" -> mode = Mode.UPSERT;
+                default -> {
+                    System.out.println("unknown option " + args[i]);
+                    return;
+                }
+            }
+        }
+
+        DBManager.createTables();
+        BulkImporter importer = new BulkImporter(batch, commit, mode);
+        try (Reader in = Files.newBufferedReader(Path.of(args[1]), StandardCharsets.UTF_8)) {
+            Result result = args[0].equals("books") ? importer.importBooks(in) : importer.importUsers(in);
+            System.out.println("import done: " + result);
+        } catch (IOException | SQLException e) {
+            System.out.println("import failed: " + e.getMessage());
+        }
+    }
+}
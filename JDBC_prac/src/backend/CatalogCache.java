@@ -0,0 +1,222 @@
+package backend;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+import java.util.function.ToIntFunction;
+import java.util.function.UnaryOperator;
+
+import models.Book;
+import models.User;
+
+// In-process read-through cache for the catalog. Each entity type has a Section holding
+//   - entities by id (LRU, maxEntities)
+//   - result lists of recent queries by key, e.g. "search:tolkien", "page:0:200" (LRU, maxLists;
+//     lists longer than maxListRows are not cached)
+//   - row counts (LRU, maxLists)
+// DBManager's mutators tell it what changed: a changed/deleted entity is dropped by id and the lists of
+// that type are cleared, a borrow/return just swaps the one Book in place (availability doesn't change
+// which rows a query returns). Every invalidation bumps a version, and a query result that was loaded
+// while the version changed underneath it is handed back but not cached. A loader returns null when the
+// query failed, the caller then gets an empty result and nothing is cached, so the next call tries again.
+// With enabled = false every call just runs the loader (library.cache.enabled=false, for benchmarks).
+public class CatalogCache {
+
+    public static final class Section<T> {
+        private final String name;
+        private final boolean enabled;
+        private final ToIntFunction<T> idOf;
+        private final int maxEntities;
+        private final int maxLists;
+        private final int maxListRows;
+        private final LinkedHashMap<Integer, T> byId;
+        private final LinkedHashMap<String, List<T>> lists;
+        private final LinkedHashMap<String, Integer> counts;
+        private long version;
+        private long hits;
+        private long misses;
+
+        Section(String name, boolean enabled, ToIntFunction<T> idOf, int maxEntities, int maxLists, int maxListRows) {
+            this.name = name;
+            this.enabled = enabled;
+            this.idOf = idOf;
+            this.maxEntities = maxEntities;
+            this.maxLists = maxLists;
+            this.maxListRows = maxListRows;
+            this.byId = new LinkedHashMap<>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<Integer, T> eldest) {
+                    return size() > Section.this.maxEntities;
+                }
+            };
+            this.lists = new LinkedHashMap<>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, List<T>> eldest) {
+                    return size() > Section.this.maxLists;
+                }
+            };
+            // "upto:<id>" gets a key per id the GUI jumps to, so these need a bound as much as the lists
+            this.counts = new LinkedHashMap<>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, Integer> eldest) {
+                    return size() > Section.this.maxLists;
+                }
+            };
+        }
+
+        // cached list for key, or loads it (outside the lock) and caches the result
+        public List<T> list(String key, Supplier<List<T>> loader) {
+            if (!enabled) {
+                List<T> loaded = loader.get();
+                return loaded == null ? List.of() : loaded;
+            }
+            long seen;
+            synchronized (this) {
+                List<T> cached = lists.get(key);
+                if (cached != null) {
+                    hits++;
+                    return cached;
+                }
+                misses++;
+                seen = version;
+            }
+            List<T> result = loader.get();
+            if (result == null) {
+                return List.of(); // failed, don't remember that
+            }
+            List<T> loaded = List.copyOf(result);
+            synchronized (this) {
+                if (seen == version && loaded.size() <= maxListRows) {
+                    lists.put(key, loaded);
+                    for (T item : loaded) {
+                        byId.put(idOf.applyAsInt(item), item);
+                    }
+                }
+            }
+            return loaded;
+        }
+
+        public T get(int id, Supplier<T> loader) {
+            if (!enabled) {
+                return loader.get();
+            }
+            long seen;
+            synchronized (this) {
+                T cached = byId.get(id);
+                if (cached != null) {
+                    hits++;
+                    return cached;
+                }
+                misses++;
+                seen = version;
+            }
+            T loaded = loader.get();
+            synchronized (this) {
+                if (loaded != null && seen == version) {
+                    byId.put(id, loaded);
+                }
+            }
+            return loaded;
+        }
+
+        public int count(String key, Supplier<Integer> loader) {
+            if (!enabled) {
+                Integer loaded = loader.get();
+                return loaded == null ? 0 : loaded;
+            }
+            long seen;
+            synchronized (this) {
+                Integer cached = counts.get(key);
+                if (cached != null) {
+                    hits++;
+                    return cached;
+                }
+                misses++;
+                seen = version;
+            }
+            Integer loaded = loader.get();
+            if (loaded == null) {
+                return 0;
+            }
+            synchronized (this) {
+                if (seen == version) {
+                    counts.put(key, loaded);
+                }
+            }
+            return loaded;
+        }
+
+        // something was added: no entity is stale, but every list/count might be
+        public synchronized void added() {
+            version++;
+            lists.clear();
+            counts.clear();
+        }
+
+        // entity changed or deleted: drop it and every list it might (or might now) be part of
+        public synchronized void changed(int id) {
+            version++;
+            byId.remove(id);
+            lists.clear();
+            counts.clear();
+        }
+
+        // entity changed in a way that doesn't affect which lists it's in: patch it everywhere in place
+        public synchronized void patch(int id, UnaryOperator<T> update) {
+            version++;
+            T cached = byId.get(id);
+            if (cached != null) {
+                byId.put(id, update.apply(cached));
+            }
+            for (Map.Entry<String, List<T>> entry : lists.entrySet()) {
+                List<T> rows = entry.getValue();
+                for (int i = 0; i < rows.size(); i++) {
+                    if (idOf.applyAsInt(rows.get(i)) == id) {
+                        List<T> copy = new ArrayList<>(rows);
+                        copy.set(i, update.apply(rows.get(i)));
+                        entry.setValue(List.copyOf(copy));
+                        break;
+                    }
+                }
+            }
+        }
+
+        public synchronized void clear() {
+            version++;
+            byId.clear();
+            lists.clear();
+            counts.clear();
+        }
+
+        public synchronized long hits() { return hits; }
+        public synchronized long misses() { return misses; }
+
+        public synchronized String stats() {
+            long total = hits + misses;
+            return String.format("%s cache: %d hits, %d misses (%.1f%%), %d entities, %d lists, %d counts",
+                    name, hits, misses, total == 0 ? 0.0 : hits * 100.0 / total, byId.size(), lists.size(), counts.size());
+        }
+    }
+
+    private final Section<Book> books;
+    private final Section<User> users;
+
+    public CatalogCache(boolean enabled, int maxEntities, int maxLists, int maxListRows) {
+        books = new Section<>("books", enabled, Book::getId, maxEntities, maxLists, maxListRows);
+        users = new Section<>("users", enabled, User::getId, maxEntities, maxLists, maxListRows);
+    }
+
+    public Section<Book> books() { return books; }
+    public Section<User> users() { return users; }
+
+    public void clear() {
+        books.clear();
+        users.clear();
+    }
+
+    public String stats() {
+        return books.stats() + "\n" + users.stats();
+    }
+}
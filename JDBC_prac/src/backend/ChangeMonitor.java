@@ -0,0 +1,195 @@
+package backend;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+// Notices when somebody (another LibraryGUI on the same db file, a bulk import, this app's own writer...)
+// committed a change, and tells listeners which tables changed.
+// Every poll is one "PRAGMA data_version" on a private connection, which only changes when another connection
+// committed. So an idle app costs one tiny pragma per interval. Only when it moved do we read the per-table
+// counters in table_versions (bumped by triggers, see SchemaMigrator v6) and report the tables whose counter
+// is different from last time.
+// Commits of this process's own writer are not reported: DBManager already updated its cache and the GUI
+// refreshed what it changed (and a borrow bumps books too, through the availability trigger, which would
+// throw away the whole book cache after every desk action). After each use of the writer ownWriteDone()
+// notes the counters, and the writer's own data_version tells whether anybody else committed since its last
+// use. A change is skipped only if every commit since the last poll was ours; when in doubt it's reported.
+public class ChangeMonitor {
+
+    public interface Listener {
+        // called on the monitor thread (or whoever announced the change), hop to the EDT yourself for Swing work
+        void tablesChanged(Set<String> tables);
+    }
+
+    private static final String DATA_VERSION = "PRAGMA data_version";
+    private static final String TABLE_VERSIONS = "SELECT name, version FROM table_versions";
+
+    private final String url;
+    private final long intervalMs;
+    private final List<Listener> listeners = new CopyOnWriteArrayList<>();
+    private final Thread poller;
+    private volatile boolean running = true;
+
+    private long dataVersion = -1;
+    private Map<String, Long> tableVersions = new HashMap<>();
+
+    // the counters right after our writer's last use. chain goes up whenever another connection committed
+    // in between, so the same chain on two polls means all commits in between were ours
+    private static final class OwnWrites {
+        final long chain;
+        final Map<String, Long> versions;
+
+        OwnWrites(long chain, Map<String, Long> versions) {
+            this.chain = chain;
+            this.versions = versions;
+        }
+    }
+
+    private volatile OwnWrites own;
+    private long writerDataVersion = -1; // guarded by this
+    private long chain;                  // guarded by this
+    private long seenChain = -1;         // poller thread only
+
+    public ChangeMonitor(String url, long intervalMs) {
+        this.url = url;
+        this.intervalMs = Math.max(10, intervalMs);
+        this.poller = new Thread(this::run, "db-change-monitor");
+        poller.setDaemon(true);
+    }
+
+    public void addListener(Listener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(Listener listener) {
+        listeners.remove(listener);
+    }
+
+    public void start() {
+        poller.start();
+    }
+
+    public void stop() {
+        running = false;
+        poller.interrupt();
+        try {
+            poller.join(5_000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void run() {
+        while (running) {
+            try (Connection conn = DriverManager.getConnection(url)) {
+                ConnectionPool.pragma(conn, "query_only = 1");
+                ConnectionPool.pragma(conn, "busy_timeout = " + DBConfig.busyTimeoutMs());
+                // first look is the baseline, nothing to report yet
+                dataVersion = dataVersion(conn);
+                tableVersions = tableVersions(conn);
+                seenChain = ownChainAt(tableVersions);
+                while (running) {
+                    Thread.sleep(intervalMs);
+                    poll(conn);
+                }
+            } catch (SQLException e) {
+                System.out.println("change monitor: " + e.getMessage() + ", reconnecting");
+                sleepQuietly();
+            } catch (InterruptedException e) {
+                // stop()
+            }
+        }
+    }
+
+    private void poll(Connection conn) throws SQLException {
+        long version = dataVersion(conn);
+        if (version == dataVersion) {
+            return;
+        }
+        dataVersion = version;
+        Map<String, Long> now = tableVersions(conn);
+        Set<String> changed = new HashSet<>();
+        if (now.isEmpty()) {
+            // no counters (db not migrated yet): all we know is that something changed
+            changed.addAll(List.of("users", "books", "borrowed_books"));
+        } else {
+            for (Map.Entry<String, Long> entry : now.entrySet()) {
+                if (!entry.getValue().equals(tableVersions.get(entry.getKey()))) {
+                    changed.add(entry.getKey());
+                }
+            }
+        }
+        tableVersions = now;
+        long ownChain = ownChainAt(now);
+        boolean onlyOurs = ownChain >= 0 && ownChain == seenChain;
+        seenChain = ownChain;
+        if (changed.isEmpty() || onlyOurs) {
+            return; // a commit that touched none of the tracked tables, or only our own writes
+        }
+        announce(Set.copyOf(changed));
+    }
+
+    // called by the writer pool every time its connection comes back, so after every own commit
+    synchronized void ownWriteDone(Connection writer) throws SQLException {
+        long version = dataVersion(writer);
+        if (version != writerDataVersion) {
+            writerDataVersion = version;
+            chain++; // somebody else committed since our last write (or this is the first one)
+        }
+        own = new OwnWrites(chain, tableVersions(writer));
+    }
+
+    // the chain the counters belong to if they're exactly what our writer left behind, -1 otherwise
+    private long ownChainAt(Map<String, Long> versions) {
+        OwnWrites mine = own;
+        return mine != null && !versions.isEmpty() && mine.versions.equals(versions) ? mine.chain : -1;
+    }
+
+    // tells the listeners right away, on the calling thread
+    final void announce(Set<String> tables) {
+        for (Listener listener : listeners) {
+            try {
+                listener.tablesChanged(tables);
+            } catch (RuntimeException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    private static long dataVersion(Connection conn) throws SQLException {
+        try (Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery(DATA_VERSION)) {
+            return rs.next() ? rs.getLong(1) : 0;
+        }
+    }
+
+    private static Map<String, Long> tableVersions(Connection conn) {
+        Map<String, Long> versions = new HashMap<>();
+        try (Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery(TABLE_VERSIONS)) {
+            while (rs.next()) {
+                versions.put(rs.getString("name"), rs.getLong("version"));
+            }
+        } catch (SQLException e) {
+            // table_versions doesn't exist yet, see poll()
+        }
+        return versions;
+    }
+
+    private void sleepQuietly() {
+        try {
+            Thread.sleep(intervalMs);
+        } catch (InterruptedException e) {
+            // stop()
+        }
+    }
+}
@@ -0,0 +1,322 @@
+package backend;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+// Bounded pool of long-lived SQLite connections. All connections are opened up front, callers get a proxy
+// whose close() hands the connection back to the pool instead of closing it, so the usual
+// try (Connection conn = DBManager.connect()) {...} pattern keeps working.
+public final class ConnectionPool implements AutoCloseable {
+
+    // runs once on every freshly opened connection (pragmas etc.)
+    public interface Initializer {
+        void init(Connection conn) throws SQLException;
+    }
+
+    // runs every time a connection comes back to the pool, before the next caller can have it
+    public interface ReleaseHook {
+        void released(Connection conn) throws SQLException;
+    }
+
+    private final String name;
+    private final String url;
+    private final int size;
+    private final long acquireTimeoutMs;
+    private final long validationIntervalMs;
+    private final long leakThresholdMs;
+    private final int statementCacheSize;
+    private final Initializer initializer;
+    private volatile ReleaseHook releaseHook;
+
+    private final LinkedBlockingQueue<PooledConnection> idle = new LinkedBlockingQueue<>();
+    private final Set<PooledConnection> all = ConcurrentHashMap.newKeySet();
+    private final Semaphore permits;
+    private final ScheduledExecutorService leakWatcher;
+    private volatile boolean closed;
+
+    public ConnectionPool(String name, String url, int size, long acquireTimeoutMs,
+                          long validationIntervalMs, long leakThresholdMs, int statementCacheSize,
+                          Initializer initializer) throws SQLException {
+        this.name = name;
+        this.url = url;
+        this.size = size;
+        this.acquireTimeoutMs = acquireTimeoutMs;
+        this.validationIntervalMs = validationIntervalMs;
+        this.leakThresholdMs = leakThresholdMs;
+        this.statementCacheSize = statementCacheSize;
+        this.initializer = initializer;
+        this.permits = new Semaphore(size, true);
+
+        // warm up: open everything now so the first queries don't pay for it
+        try {
+            for (int i = 0; i < size; i++) {
+                idle.add(open());
+            }
+        } catch (SQLException e) {
+            close();
+            throw e;
+        }
+
+        if (leakThresholdMs > 0) {
+            leakWatcher = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread t = new Thread(r, name + "-leak-watcher");
+                t.setDaemon(true);
+                return t;
+            });
+            long period = Math.max(1_000, leakThresholdMs / 2);
+            leakWatcher.scheduleAtFixedRate(this::reportLeaks, period, period, TimeUnit.MILLISECONDS);
+        } else {
+            leakWatcher = null;
+        }
+    }
+
+    // blocks up to acquireTimeoutMs for a free connection
+    public Connection getConnection() throws SQLException {
+        if (closed) {
+            throw new SQLException("pool " + name + " is closed");
+        }
+        long waitStart = System.nanoTime();
+        try {
+            if (!permits.tryAcquire(acquireTimeoutMs, TimeUnit.MILLISECONDS)) {
+                QueryMetrics.error();
+                throw new SQLException("timed out after " + acquireTimeoutMs + "ms waiting for a " + name + " connection");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("interrupted while waiting for a " + name + " connection", e);
+        } finally {
+            QueryMetrics.connectionWait(System.nanoTime() - waitStart);
+        }
+
+        try {
+            PooledConnection pc = idle.poll();
+            if (pc == null || !validate(pc)) {
+                if (pc != null) {
+                    discard(pc);
+                }
+                pc = open();
+            }
+            pc.borrowedAt = System.currentTimeMillis();
+            pc.borrower = Thread.currentThread();
+            pc.borrowedBy = leakThresholdMs > 0 ? new Throwable("connection borrowed here") : null;
+            pc.leakReported = false;
+            return pc.newHandle();
+        } catch (SQLException | RuntimeException e) {
+            permits.release();
+            throw e;
+        }
+    }
+
+    public void setReleaseHook(ReleaseHook hook) {
+        releaseHook = hook;
+    }
+
+    public int size() { return size; }
+    public int idleCount() { return idle.size(); }
+    public int activeCount() { return size - permits.availablePermits(); }
+
+    // closes idle connections now, busy ones are closed when they come back
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        if (leakWatcher != null) {
+            leakWatcher.shutdownNow();
+        }
+        PooledConnection pc;
+        while ((pc = idle.poll()) != null) {
+            discard(pc);
+        }
+        if (activeCount() > 0) {
+            System.out.println("pool " + name + " closed with " + activeCount() + " connection(s) still in use");
+        }
+    }
+
+    // aborts the statement running on the connection `thread` currently holds, if it holds one.
+    // Statement.cancel() is sqlite3_interrupt(), which is safe to call from another thread; the query
+    // fails with SQLITE_INTERRUPT in its own thread. used for AsyncDBManager cancellation/timeouts
+    public boolean cancel(Thread thread) {
+        for (PooledConnection pc : all) {
+            if (pc.borrower == thread) {
+                try (Statement stmt = pc.raw.createStatement()) {
+                    stmt.cancel();
+                    return true;
+                } catch (SQLException e) {
+                    System.out.println("could not cancel query in pool " + name + ": " + e.getMessage());
+                }
+            }
+        }
+        return false;
+    }
+
+    private PooledConnection open() throws SQLException {
+        Connection raw = DriverManager.getConnection(url);
+        try {
+            if (initializer != null) {
+                initializer.init(raw);
+            }
+        } catch (SQLException e) {
+            raw.close();
+            throw e;
+        }
+        PooledConnection pc = new PooledConnection(raw);
+        all.add(pc);
+        return pc;
+    }
+
+    private boolean validate(PooledConnection pc) {
+        if (System.currentTimeMillis() - pc.lastReturned < validationIntervalMs) {
+            return true;
+        }
+        try {
+            return !pc.raw.isClosed() && pc.raw.isValid(2);
+        } catch (SQLException e) {
+            return false;
+        }
+    }
+
+    private void discard(PooledConnection pc) {
+        all.remove(pc);
+        pc.statements.closeAll();
+        try {
+            pc.raw.close();
+        } catch (SQLException e) {
+            System.out.println("error closing pooled connection: " + e.getMessage());
+        }
+    }
+
+    private void release(PooledConnection pc) {
+        pc.borrowedAt = 0;
+        pc.borrowedBy = null;
+        pc.borrower = null;
+        boolean reusable = !closed;
+        try {
+            if (pc.raw.isClosed()) {
+                reusable = false;
+            } else if (!pc.raw.getAutoCommit()) {
+                // someone forgot to commit, don't leak half a transaction to the next caller
+                pc.raw.rollback();
+                pc.raw.setAutoCommit(true);
+            }
+        } catch (SQLException e) {
+            reusable = false;
+        }
+
+        ReleaseHook hook = releaseHook;
+        if (reusable && hook != null) {
+            try {
+                hook.released(pc.raw);
+            } catch (SQLException e) {
+                System.out.println("release hook of pool " + name + " failed: " + e.getMessage());
+            }
+        }
+
+        if (reusable) {
+            pc.lastReturned = System.currentTimeMillis();
+            idle.offer(pc);
+        } else {
+            discard(pc);
+        }
+        permits.release();
+    }
+
+    private void reportLeaks() {
+        long now = System.currentTimeMillis();
+        for (PooledConnection pc : all) {
+            long since = pc.borrowedAt;
+            if (since > 0 && !pc.leakReported && now - since > leakThresholdMs) {
+                pc.leakReported = true;
+                System.out.println("possible connection leak in pool " + name + ": held for " + (now - since) + "ms");
+                if (pc.borrowedBy != null) {
+                    pc.borrowedBy.printStackTrace(System.out);
+                }
+            }
+        }
+    }
+
+    // the real connection plus some bookkeeping
+    private final class PooledConnection {
+        final Connection raw;
+        final StatementCache statements;
+        volatile long borrowedAt;
+        volatile Throwable borrowedBy;
+        volatile Thread borrower;
+        volatile boolean leakReported;
+        volatile long lastReturned = System.currentTimeMillis();
+
+        PooledConnection(Connection raw) {
+            this.raw = raw;
+            this.statements = new StatementCache(raw, statementCacheSize);
+        }
+
+        Connection newHandle() {
+            return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(),
+                    new Class<?>[]{Connection.class}, new Handle(this));
+        }
+    }
+
+    // one handle per checkout, so a stale reference can't touch the connection after close()
+    private final class Handle implements InvocationHandler {
+        private PooledConnection pc;
+
+        Handle(PooledConnection pc) {
+            this.pc = pc;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "close":
+                    if (pc != null) {
+                        PooledConnection owner = pc;
+                        pc = null;
+                        release(owner);
+                    }
+                    return null;
+                case "isClosed":
+                    return pc == null;
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "toString":
+                    return "pooled(" + name + ")" + (pc == null ? "[closed]" : "");
+                default:
+                    break;
+            }
+            if (pc == null) {
+                throw new SQLException("connection already returned to pool " + name);
+            }
+            if (method.getName().equals("prepareStatement") && args.length == 1) {
+                return pc.statements.prepare((String) args[0]);
+            }
+            try {
+                return method.invoke(pc.raw, args);
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            }
+        }
+    }
+
+    // helper for Initializers
+    public static void pragma(Connection conn, String pragma) throws SQLException {
+        try (Statement stmt = conn.createStatement()) {
+            stmt.execute("PRAGMA " + pragma);
+        }
+    }
+}
@@ -0,0 +1,29 @@
+package backend;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+
+// JFR event for one DBManager operation, committed by QueryMetrics.call(). Costs nothing unless a
+// recording is running: java -XX:StartFlightRecording=filename=library.jfr ...
+// the thread is recorded too, so calls made on the EDT line up with the EdtStall events next to them
+@Name("library.DBCall")
+@Label("DB Call")
+@Category({"Library", "Database"})
+@Description("A DBManager operation, with the rows it returned or wrote")
+@Threshold("0 ms")
+@StackTrace(true)
+class DBCallEvent extends jdk.jfr.Event {
+    @Label("Operation")
+    String operation;
+
+    @Label("Rows")
+    long rows;
+
+    @Label("Failed")
+    @Description("An SQLException happened somewhere inside the call")
+    boolean failed;
+}
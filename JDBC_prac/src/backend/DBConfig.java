@@ -0,0 +1,213 @@
+package backend;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Locale;
+import java.util.Properties;
+import java.util.Set;
+
+// All the knobs for the db layer in one place. Values are looked up in this order:
+//   1. system properties, e.g. java -Dlibrary.pool.size=8 ...
+//   2. the config file database/library.properties (other path: -Dlibrary.config=...), same keys
+//   3. the defaults below
+// see database/library.properties.example for all keys
+public class DBConfig {
+    public static final String DB_URL = "jdbc:sqlite:database/library.db";
+    public static final String CONFIG_FILE = "database/library.properties";
+
+    private static final Properties FILE = load();
+
+    private DBConfig() {}
+
+    private static Properties load() {
+        Properties props = new Properties();
+        Path path = Path.of(System.getProperty("library.config", CONFIG_FILE));
+        if (Files.isRegularFile(path)) {
+            try (Reader in = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+                props.load(in);
+                System.out.println("loaded db config from " + path);
+            } catch (IOException e) {
+                System.out.println("could not read " + path + ": " + e.getMessage());
+            }
+        }
+        return props;
+    }
+
+    public static String url() {
+        return get("library.db.url", DB_URL);
+    }
+
+    // how many read connections are kept open
+    public static int poolSize() {
+        return Math.max(1, getInt("library.pool.size", 4));
+    }
+
+    // how long a caller waits for a free connection before connect() gives up
+    public static long acquireTimeoutMs() {
+        return getLong("library.pool.acquireTimeoutMs", 30_000);
+    }
+
+    // idle connections older than this get checked with isValid() before being handed out
+    public static long validationIntervalMs() {
+        return getLong("library.pool.validationIntervalMs", 60_000);
+    }
+
+    // a connection borrowed longer than this is reported as a leak, 0 turns the check off.
+    // off by default: the check records a stack trace on every getConnection(), which is too much on the hot path
+    public static long leakThresholdMs() {
+        return getLong("library.pool.leakThresholdMs", 0);
+    }
+
+    // prepared statements cached per connection, 0 disables the cache
+    public static int statementCacheSize() {
+        return getInt("library.pool.statementCacheSize", 64);
+    }
+
+    // rows the driver fetches per round trip when streaming (DBManager.stream*)
+    public static int fetchSize() {
+        return Math.max(1, getInt("library.db.fetchSize", 500));
+    }
+
+    public static int busyTimeoutMs() {
+        return getInt("library.db.busyTimeoutMs", 5_000);
+    }
+
+    // WAL lets the read pool keep reading while the writer commits. DELETE is the old rollback journal
+    public static String journalMode() {
+        return oneOf("library.db.journalMode", "WAL", Set.of("WAL", "DELETE", "TRUNCATE", "PERSIST", "MEMORY"));
+    }
+
+    // FULL syncs the WAL on every commit, so a committed borrow survives a power cut (GroupCommitQueue relies
+    // on that). NORMAL is faster and still never corrupts the db in WAL mode, but can lose the last commits
+    public static String synchronous() {
+        return oneOf("library.db.synchronous", "FULL", Set.of("OFF", "NORMAL", "FULL", "EXTRA"));
+    }
+
+    // page cache per connection, negative = KiB (SQLite convention), so -16000 is about 16MB
+    public static int cacheSize() {
+        return getInt("library.db.cacheSize", -16_000);
+    }
+
+    // bytes of the db file memory mapped for reads, 0 turns mmap off
+    public static long mmapSize() {
+        return Math.max(0, getLong("library.db.mmapSize", 256L * 1024 * 1024));
+    }
+
+    // route DBManager writes through the GroupCommitQueue (off by default)
+    public static boolean groupCommit() {
+        return Boolean.parseBoolean(get("library.write.groupCommit", "false"));
+    }
+
+    // how long the queue waits for more writes before committing a group
+    public static long groupCommitWindowMs() {
+        return getLong("library.write.groupCommitWindowMs", 5);
+    }
+
+    public static int groupCommitMaxBatch() {
+        return getInt("library.write.groupCommitMaxBatch", 256);
+    }
+
+    // in-memory CatalogCache in front of the book/user reads
+    public static boolean cacheEnabled() {
+        return Boolean.parseBoolean(get("library.cache.enabled", "true"));
+    }
+
+    // books/users kept by id (each)
+    public static int cacheMaxEntities() {
+        return Math.max(0, getInt("library.cache.maxEntities", 10_000));
+    }
+
+    // query results (searches, pages, getAll*) kept per entity type
+    public static int cacheMaxLists() {
+        return Math.max(0, getInt("library.cache.maxLists", 64));
+    }
+
+    // results with more rows than this are not cached at all
+    public static int cacheMaxListRows() {
+        return Math.max(0, getInt("library.cache.maxListRows", 5_000));
+    }
+
+    // how often ChangeMonitor checks the db for commits from other connections
+    public static long changePollMs() {
+        return getLong("library.monitor.intervalMs", 1_000);
+    }
+
+    // per-operation latency/row/error counters (QueryMetrics)
+    public static boolean metricsEnabled() {
+        return Boolean.parseBoolean(get("library.metrics.enabled", "true"));
+    }
+
+    // statements running at least this long go to the slow query log, 0 logs everything
+    public static long slowQueryMs() {
+        return Math.max(0, getLong("library.metrics.slowQueryMs", 100));
+    }
+
+    // print the metrics table every n seconds, 0 = never
+    public static long metricsDumpIntervalSec() {
+        return Math.max(0, getLong("library.metrics.dumpIntervalSec", 0));
+    }
+
+    // a loan open for longer than this is overdue (DBManager.getOverdueLoans)
+    public static int loanDays() {
+        return (int) Math.max(1, getLong("library.loan.days", 28));
+    }
+
+    // LoanArchiver: returned loans older than this move to loan_archive, 0 = never
+    public static int archiveAfterDays() {
+        return (int) Math.max(0, getLong("library.archive.afterDays", 365));
+    }
+
+    // how often the GUI runs the archiver, 0 = only by hand (java backend.LoanArchiver)
+    public static long archiveIntervalHours() {
+        return Math.max(0, getLong("library.archive.intervalHours", 24));
+    }
+
+    // loans per archiver transaction
+    public static int archiveBatchSize() {
+        return (int) Math.max(1, getLong("library.archive.batchSize", 5_000));
+    }
+
+    // AsyncDBManager futures fail with a TimeoutException (and the query is aborted) after this, 0 = no limit
+    public static long asyncTimeoutMs() {
+        return Math.max(0, getLong("library.async.timeoutMs", 0));
+    }
+
+    static String get(String key, String def) {
+        String value = System.getProperty(key);
+        if (value == null || value.isBlank()) {
+            value = FILE.getProperty(key);
+        }
+        return (value == null || value.isBlank()) ? def : value.trim();
+    }
+
+    // these end up in PRAGMA statements, so only known values get through
+    static String oneOf(String key, String def, Set<String> allowed) {
+        String value = get(key, def).toUpperCase(Locale.ROOT);
+        if (!allowed.contains(value)) {
+            System.out.println("bad value for " + key + ", using " + def);
+            return def;
+        }
+        return value;
+    }
+
+    static int getInt(String key, int def) {
+        try {
+            return Integer.parseInt(get(key, String.valueOf(def)));
+        } catch (NumberFormatException e) {
+            System.out.println("bad value for " + key + ", using " + def);
+            return def;
+        }
+    }
+
+    static long getLong(String key, long def) {
+        try {
+            return Long.parseLong(get(key, String.valueOf(def)));
+        } catch (NumberFormatException e) {
+            System.out.println("bad value for " + key + ", using " + def);
+            return def;
+        }
+    }
+}
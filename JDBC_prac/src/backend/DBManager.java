@@ -1,399 +1,1299 @@
 package backend;
 
 import java.sql.Connection;
-import java.sql.DriverManager;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
-import java.sql.Statement;
+import java.sql.Types;
+import java.time.Instant;
+import java.time.Duration;
+import java.time.LocalDate;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.stream.Stream;
 
 import models.Book;
 import models.BorrowedBook;
+import models.CirculationStats;
+import models.DailyLoans;
+import models.LoanCount;
 import models.User;
 // You need to run this Java file before first start to create DB file and build tables.
-// SQLite-JDBC lib is used for db Connection. data storage path is set in DB_URL var. See JDBC doc for info on queries.
+// SQLite-JDBC lib is used for db Connection. data storage path is set in DBConfig.DB_URL. See JDBC doc for info on queries.
+// Connections come from two pools: a few read-only readers and one writer (see ConnectionPool), the db runs in
+// WAL mode by default so both sides work at the same time. Always close() what you get, that just hands it back
+// to the pool. Tuning (pool size, pragmas...) is in DBConfig / database/library.properties.
+// Every public operation is timed under its own name by QueryMetrics (latency, rows, errors, slow queries).
 public class DBManager {
-    private static final String DB_URL = "jdbc:sqlite:database/library.db"; 
+    private static ConnectionPool readPool;
+    private static ConnectionPool writePool;
+    private static GroupCommitQueue writeQueue;
+    private static volatile ChangeMonitor changeMonitor;
+    private static boolean shutdownHookAdded;
+    // book/user reads go through here, the mutators below tell it what they changed
+    private static final CatalogCache CACHE = new CatalogCache(DBConfig.cacheEnabled(),
+            DBConfig.cacheMaxEntities(), DBConfig.cacheMaxLists(), DBConfig.cacheMaxListRows());
 
-    // sql verbindung
+    // SQLite primary result codes, see tryBorrow
+    private static final int SQLITE_BUSY = 5;
+    private static final int SQLITE_LOCKED = 6;
+    private static final int SQLITE_CONSTRAINT = 19;
+    private static final int BORROW_RETRIES = 6;
+    private static final long BORROW_BACKOFF_MS = 10;
+    private static final long BORROW_BACKOFF_MAX_MS = 500;
+
+    // all SQL lives up here as constants: every call hands the exact same string to prepareStatement,
+    // so the per-connection StatementCache only has to parse and plan each one once
+    private static final String ADD_USER = "INSERT INTO users(first_name, last_name, email, phone) VALUES(?, ?, ?, ?)";
+    private static final String ADD_BOOK = "INSERT INTO books (title, author, year, isbn) VALUES (?, ?, ?, ?)";
+    private static final String ALL_USERS = "SELECT * FROM users";
+    // searches return one page (LIMIT ?2 OFFSET ?3): a one or two letter prefix can match most of the table.
+    // the FTS ones pick the page inside the index first and only join those rows
+    private static final String SEARCH_USERS = "SELECT * FROM users WHERE first_name LIKE ?1 OR last_name LIKE ?1 " +
+            "ORDER BY id LIMIT ?2 OFFSET ?3";
+    private static final String SEARCH_USERS_FTS = "SELECT users.* FROM (SELECT rowid, rank FROM users_fts " +
+            "WHERE users_fts MATCH ?1 ORDER BY rank LIMIT ?2 OFFSET ?3) hits " +
+            "JOIN users ON users.id = hits.rowid ORDER BY hits.rank";
+    private static final String SEARCH_USERS_FTS_UNRANKED = "SELECT users.* FROM (SELECT rowid FROM users_fts " +
+            "WHERE users_fts MATCH ?1 ORDER BY rowid LIMIT ?2 OFFSET ?3) hits " +
+            "JOIN users ON users.id = hits.rowid ORDER BY users.id";
+    // type-ahead for picking a user: the first ?2 by first name, last name and email that start with ?1, plus
+    // user ?3. each branch is a range scan on one of the NOCASE indexes (LIKE 'abc%' turns into one), so
+    // the cost doesn't depend on how many users there are. the _FULL_NAME one is for "first last" / "last first"
+    private static final String LOOKUP_USERS = "SELECT * FROM users WHERE id IN (" +
+            "SELECT id FROM (SELECT id FROM users WHERE first_name LIKE ?1 ESCAPE '\\' ORDER BY first_name COLLATE NOCASE LIMIT ?2) " +
+            "UNION SELECT id FROM (SELECT id FROM users WHERE last_name LIKE ?1 ESCAPE '\\' ORDER BY last_name COLLATE NOCASE LIMIT ?2) " +
+            "UNION SELECT id FROM (SELECT id FROM users WHERE email LIKE ?1 ESCAPE '\\' ORDER BY email COLLATE NOCASE LIMIT ?2) " +
+            "UNION SELECT ?3) " +
+            "ORDER BY last_name COLLATE NOCASE, first_name COLLATE NOCASE, id LIMIT ?2";
+    private static final String LOOKUP_USERS_FULL_NAME = "SELECT * FROM users WHERE id IN (" +
+            "SELECT id FROM (SELECT id FROM users WHERE first_name LIKE ?1 ESCAPE '\\' AND last_name LIKE ?2 ESCAPE '\\' LIMIT ?3) " +
+            "UNION SELECT id FROM (SELECT id FROM users WHERE last_name LIKE ?1 ESCAPE '\\' AND first_name LIKE ?2 ESCAPE '\\' LIMIT ?3)) " +
+            "ORDER BY last_name COLLATE NOCASE, first_name COLLATE NOCASE, id LIMIT ?3";
+    // books.available is maintained by triggers on borrowed_books (see SchemaMigrator), no per-row subquery needed
+    private static final String ALL_BOOKS = "SELECT * FROM books";
+    private static final String BORROWED_BOOKS = "SELECT br.id AS loan_id, b.id, b.title, b.author, u.first_name, u.last_name, br.borrow_date, br.return_date " +
+            "FROM borrowed_books br " +
+            "JOIN books b ON br.book_id = b.id " +
+            "JOIN users u ON br.user_id = u.id";
+    private static final String SEARCH_BOOKS = "SELECT * FROM books WHERE title LIKE ?1 OR isbn LIKE ?1 " +
+            "ORDER BY id LIMIT ?2 OFFSET ?3";
+    private static final String SEARCH_BOOKS_FTS = "SELECT books.* FROM (SELECT rowid, rank FROM books_fts " +
+            "WHERE books_fts MATCH ?1 ORDER BY rank LIMIT ?2 OFFSET ?3) hits " +
+            "JOIN books ON books.id = hits.rowid ORDER BY hits.rank";
+    private static final String SEARCH_BOOKS_FTS_UNRANKED = "SELECT books.* FROM (SELECT rowid FROM books_fts " +
+            "WHERE books_fts MATCH ?1 ORDER BY rowid LIMIT ?2 OFFSET ?3) hits " +
+            "JOIN books ON books.id = hits.rowid ORDER BY books.id";
+    private static final String UPDATE_USER = "UPDATE users SET first_name = ?, last_name = ?, email = ?, phone = ? WHERE id = ?";
+    private static final String UPDATE_BOOK = "UPDATE books SET title = ?, author = ?, year = ?, isbn = ? WHERE id = ?";
+    // conditional insert: only if book and user exist and the book has no open loan. the unique partial index
+    // on open loans (idx_borrowed_books_open_loan) backs this up against writers outside this app. foreign keys
+    // aren't enforced (no PRAGMA foreign_keys), so the existence checks are what keeps out dangling loans
+    private static final String BORROW_BOOK = "INSERT INTO borrowed_books (book_id, user_id) " +
+            "SELECT ?1, ?2 WHERE EXISTS (SELECT 1 FROM books WHERE id = ?1) AND EXISTS (SELECT 1 FROM users WHERE id = ?2) " +
+            "AND NOT EXISTS (SELECT 1 FROM borrowed_books WHERE book_id = ?1 AND return_date IS NULL)";
+    // nothing inserted: 1 if that was because book or user is missing
+    private static final String BORROW_MISSING = "SELECT NOT EXISTS (SELECT 1 FROM books WHERE id = ?1) " +
+            "OR NOT EXISTS (SELECT 1 FROM users WHERE id = ?2)";
+    private static final String RETURN_BOOK = "UPDATE borrowed_books SET return_date = " + SchemaMigrator.NOW_MILLIS +
+            " WHERE book_id = ? AND return_date IS NULL";
+    private static final String USER_BY_ID = "SELECT * FROM users WHERE id = ?";
+    private static final String BOOK_BY_ID = "SELECT * FROM books WHERE id = ?";
+    private static final String DELETE_USER = "DELETE FROM users WHERE id = ?";
+    private static final String DELETE_BOOK = "DELETE FROM books WHERE id = ?";
+    // keyset pagination: "WHERE id > last id seen ORDER BY id LIMIT n" walks the primary key, so page 10000
+    // costs the same as page 1. *_KEY_AT find the id n rows further on, to jump somewhere without reading the rows
+    private static final String COUNT_USERS = "SELECT COUNT(*) FROM users";
+    private static final String COUNT_USERS_UP_TO = "SELECT COUNT(*) FROM users WHERE id <= ?";
+    private static final String USERS_PAGE = "SELECT * FROM users WHERE id > ? ORDER BY id LIMIT ?";
+    private static final String USERS_KEY_AT = "SELECT id FROM users WHERE id > ? ORDER BY id LIMIT 1 OFFSET ?";
+    private static final String COUNT_BOOKS = "SELECT COUNT(*) FROM books";
+    private static final String COUNT_BOOKS_UP_TO = "SELECT COUNT(*) FROM books WHERE id <= ?";
+    private static final String BOOKS_PAGE = "SELECT * FROM books WHERE id > ? ORDER BY id LIMIT ?";
+    private static final String BOOKS_KEY_AT = "SELECT id FROM books WHERE id > ? ORDER BY id LIMIT 1 OFFSET ?";
+    private static final String COUNT_BORROWED_BOOKS = "SELECT COUNT(*) FROM borrowed_books";
+    private static final String COUNT_BORROWED_BOOKS_UP_TO = "SELECT COUNT(*) FROM borrowed_books WHERE id <= ?";
+    private static final String BORROWED_BOOKS_PAGE = BORROWED_BOOKS + " WHERE br.id > ? ORDER BY br.id LIMIT ?";
+    private static final String BORROWED_BOOKS_KEY_AT = "SELECT id FROM borrowed_books WHERE id > ? ORDER BY id LIMIT 1 OFFSET ?";
+    // open loans only, keyed by book id: there is at most one open loan per book and the partial index
+    // idx_borrowed_books_open_loan (book_id WHERE return_date IS NULL) holds exactly these rows in that order,
+    // so none of this ever touches the loan history
+    private static final String ACTIVE_LOANS = BORROWED_BOOKS + " WHERE br.return_date IS NULL ORDER BY br.book_id";
+    private static final String COUNT_ACTIVE_LOANS = "SELECT COUNT(*) FROM borrowed_books WHERE return_date IS NULL";
+    private static final String COUNT_ACTIVE_LOANS_UP_TO = "SELECT COUNT(*) FROM borrowed_books WHERE return_date IS NULL AND book_id <= ?";
+    private static final String ACTIVE_LOANS_PAGE = BORROWED_BOOKS + " WHERE br.return_date IS NULL AND br.book_id > ? ORDER BY br.book_id LIMIT ?";
+    private static final String ACTIVE_LOANS_KEY_AT = "SELECT book_id FROM borrowed_books WHERE return_date IS NULL AND book_id > ? ORDER BY book_id LIMIT 1 OFFSET ?";
+    // returned loans: the recent ones still in borrowed_books plus loan_archive (see LoanArchiver). a loan is in
+    // exactly one of the two, both sides walk their primary key and the compound ORDER BY merges them.
+    // LEFT JOINs because archived loans can point at books/users that have been deleted since
+    private static final String CLOSED_LOANS = "SELECT id, user_id, book_id, borrow_date, return_date FROM borrowed_books WHERE return_date IS NOT NULL";
+    private static final String ARCHIVED_LOANS = "SELECT id, user_id, book_id, borrow_date, return_date FROM loan_archive";
+    private static final String HISTORY_COLUMNS = "SELECT h.id AS loan_id, h.book_id AS id, COALESCE(b.title, '(deleted)') AS title, " +
+            "COALESCE(b.author, '') AS author, COALESCE(u.first_name, '(deleted)') AS first_name, COALESCE(u.last_name, '') AS last_name, " +
+            "h.borrow_date, h.return_date FROM (";
+    private static final String HISTORY_JOINS = ") h LEFT JOIN books b ON b.id = h.book_id LEFT JOIN users u ON u.id = h.user_id";
+    private static final String COUNT_LOAN_HISTORY = "SELECT (SELECT COUNT(*) FROM borrowed_books WHERE return_date IS NOT NULL) " +
+            "+ (SELECT COUNT(*) FROM loan_archive)";
+    private static final String COUNT_LOAN_HISTORY_UP_TO = "SELECT (SELECT COUNT(*) FROM borrowed_books WHERE return_date IS NOT NULL AND id <= ?1) " +
+            "+ (SELECT COUNT(*) FROM loan_archive WHERE id <= ?1)";
+    private static final String LOAN_HISTORY_PAGE = HISTORY_COLUMNS + CLOSED_LOANS + " AND id > ?1 UNION ALL " +
+            ARCHIVED_LOANS + " WHERE id > ?1 ORDER BY id LIMIT ?2" + HISTORY_JOINS + " ORDER BY h.id";
+    private static final String LOAN_HISTORY_KEY_AT = "SELECT id FROM borrowed_books WHERE return_date IS NOT NULL AND id > ?1 " +
+            "UNION ALL SELECT id FROM loan_archive WHERE id > ?1 ORDER BY id LIMIT 1 OFFSET ?2";
+    // every loan (open, returned, archived) borrowed in [?1, ?2) (epoch millis), oldest first. both sides are
+    // range scans on their borrow_date index, already in (borrow_date, id) order, so the merge needs no sort
+    private static final String LOANS_BORROWED_BETWEEN = HISTORY_COLUMNS +
+            "SELECT id, user_id, book_id, borrow_date, return_date FROM borrowed_books WHERE borrow_date >= ?1 AND borrow_date < ?2 " +
+            "UNION ALL " + ARCHIVED_LOANS + " WHERE borrow_date >= ?1 AND borrow_date < ?2 ORDER BY borrow_date, id LIMIT ?3" +
+            HISTORY_JOINS + " ORDER BY h.borrow_date, h.id";
+    // open loans borrowed before ?1, longest out first. idx_borrowed_books_open_since holds just the open
+    // loans by borrow_date, so this reads the overdue ones and stops
+    private static final String OVERDUE_LOANS = BORROWED_BOOKS + " WHERE br.return_date IS NULL AND br.borrow_date < ? " +
+            "ORDER BY br.borrow_date LIMIT ?";
+    private static final String COUNT_OVERDUE_LOANS = "SELECT COUNT(*) FROM borrowed_books WHERE return_date IS NULL AND borrow_date < ?";
+    // statistics only read the summary tables the triggers maintain (SchemaMigrator.STATISTICS_TABLES), never
+    // the loans themselves. the top lists walk the loans index backwards and stop after ? rows
+    private static final String LOAN_TOTALS = "SELECT books, loans, open_loans FROM loan_totals WHERE id = 1";
+    private static final String MOST_BORROWED_BOOKS = "SELECT s.book_id, COALESCE(b.title, '(deleted)'), s.loans, s.last_borrowed " +
+            "FROM book_loan_stats s LEFT JOIN books b ON b.id = s.book_id ORDER BY s.loans DESC LIMIT ?";
+    private static final String MOST_ACTIVE_USERS = "SELECT s.user_id, COALESCE(u.first_name || ' ' || u.last_name, '(deleted)'), " +
+            "s.loans, s.last_borrowed FROM user_loan_stats s LEFT JOIN users u ON u.id = s.user_id ORDER BY s.loans DESC LIMIT ?";
+    private static final String DAILY_LOANS = "SELECT day, borrowed, returned FROM daily_loan_stats WHERE day >= ? AND day <= ? ORDER BY day";
+    private static final String AVAILABILITY_MISMATCHES = "SELECT id FROM books " +
+            "WHERE available != NOT EXISTS (SELECT 1 FROM borrowed_books " +
+            "WHERE borrowed_books.book_id = books.id AND borrowed_books.return_date IS NULL)";
+
+    // sql verbindung. returns a pooled read connection, close() gives it back
     public static Connection connect() {
-        Connection conn = null;
         try {
-            conn = DriverManager.getConnection(DB_URL);
-            System.out.println("db connected");
+            return readPool().getConnection();
         } catch (SQLException e) {
             System.out.println("connection error: " + e.getMessage());
+            return null;
         }
-        return conn;
     }
 
-    // tabellen lol
-    public static void createTables() {
-        String usersTable = "CREATE TABLE IF NOT EXISTS users ("
-                + "id INTEGER PRIMARY KEY AUTOINCREMENT, "
-                + "first_name TEXT NOT NULL, "
-                + "last_name TEXT NOT NULL, "
-                + "email TEXT UNIQUE NOT NULL, "
-                + "phone TEXT);";
-
-        String booksTable = "CREATE TABLE IF NOT EXISTS books ("
-                + "id INTEGER PRIMARY KEY AUTOINCREMENT, "
-                + "title TEXT NOT NULL, "
-                + "author TEXT NOT NULL, "
-                + "year INTEGER, "
-                + "isbn TEXT UNIQUE NOT NULL, "
-                + "available BOOLEAN DEFAULT 1);";
-
-        String borrowedBooksTable = "CREATE TABLE IF NOT EXISTS borrowed_books ("
-        		+ "id INTEGER PRIMARY KEY AUTOINCREMENT, "
-                + "user_id INTEGER NOT NULL, "
-                + "book_id INTEGER NOT NULL, "
-                + "borrow_date TEXT DEFAULT CURRENT_TIMESTAMP, "
-                + "return_date TEXT, "
-                + "FOREIGN KEY(user_id) REFERENCES users(id), "
-                + "FOREIGN KEY(book_id) REFERENCES books(id));";
-
-        try (Connection conn = connect();
-             Statement stmt = conn.createStatement()) {
-            stmt.execute(usersTable);
-            stmt.execute(booksTable);
-            stmt.execute(borrowedBooksTable);
-            System.out.println("tables created");
+    // the single writer connection. all inserts/updates/deletes go through here, so writers queue up
+    // in the pool instead of fighting over the SQLite file lock
+    static Connection connectWriter() {
+        try {
+            return writePool().getConnection();
         } catch (SQLException e) {
-            System.out.println("error creating tables: " + e.getMessage());
+            System.out.println("connection error: " + e.getMessage());
+            return null;
         }
     }
 
+    private static synchronized ConnectionPool readPool() throws SQLException {
+        if (readPool == null) {
+            writePool(); // the writer switches the journal mode, let it go first
+            readPool = newPool("read", DBConfig.poolSize(), DBManager::initReader);
+        }
+        return readPool;
+    }
 
-    // C in CRUD - Create
-    public static void addUser(String firstName, String lastName, String email, String phone) {
-    String sql = "INSERT INTO users(first_name, last_name, email, phone) VALUES(?, ?, ?, ?)";
+    private static synchronized ConnectionPool writePool() throws SQLException {
+        if (writePool == null) {
+            writePool = newPool("write", 1, DBManager::initWriter);
+            // lets the ChangeMonitor tell this process's own commits from everybody else's
+            writePool.setReleaseHook(conn -> {
+                ChangeMonitor monitor = changeMonitor;
+                if (monitor != null) {
+                    monitor.ownWriteDone(conn);
+                }
+            });
+        }
+        return writePool;
+    }
 
-    try (Connection conn = connect();
-         PreparedStatement pstmt = conn.prepareStatement(sql)) {
-        pstmt.setString(1, firstName);
-        pstmt.setString(2, lastName);
-        pstmt.setString(3, email);
-        pstmt.setString(4, phone);
-        pstmt.executeUpdate();
-        System.out.println("User added successfully.");
-    } catch (SQLException e) {
-        System.out.println("Error adding user: " + e.getMessage());
+    private static ConnectionPool newPool(String name, int size, ConnectionPool.Initializer init) throws SQLException {
+        if (!shutdownHookAdded) {
+            Runtime.getRuntime().addShutdownHook(new Thread(DBManager::shutdown, "db-shutdown"));
+            shutdownHookAdded = true;
+        }
+        return new ConnectionPool(name, DBConfig.url(), size,
+                DBConfig.acquireTimeoutMs(), DBConfig.validationIntervalMs(), DBConfig.leakThresholdMs(),
+                DBConfig.statementCacheSize(), init);
     }
+
+    // journal_mode is stored in the db file, so setting it on the writer is enough for everyone.
+    // in WAL mode readers never block the writer and the other way round
+    private static void initWriter(Connection conn) throws SQLException {
+        initCommon(conn);
+        ConnectionPool.pragma(conn, "journal_mode = " + DBConfig.journalMode());
+        ConnectionPool.pragma(conn, "synchronous = " + DBConfig.synchronous());
     }
 
-    public static void addBook(String title, String author, int year, String isbn) {
-        String query = "INSERT INTO books (title, author, year, isbn) VALUES (?, ?, ?, ?)";
+    // read pool connections refuse writes, so nothing can sneak past the single writer
+    private static void initReader(Connection conn) throws SQLException {
+        initCommon(conn);
+        ConnectionPool.pragma(conn, "query_only = 1");
+    }
 
-        try (Connection conn = connect();
-             PreparedStatement pstmt = conn.prepareStatement(query)) {
+    private static void initCommon(Connection conn) throws SQLException {
+        ConnectionPool.pragma(conn, "busy_timeout = " + DBConfig.busyTimeoutMs());
+        ConnectionPool.pragma(conn, "cache_size = " + DBConfig.cacheSize());
+        ConnectionPool.pragma(conn, "mmap_size = " + DBConfig.mmapSize());
+    }
 
-            pstmt.setString(1, title);
-            pstmt.setString(2, author);
-            pstmt.setInt(3, year);
-            pstmt.setString(4, isbn);
-            pstmt.executeUpdate();
+    // flushes queued writes and closes all pooled connections. runs automatically on JVM exit,
+    // next connect() opens fresh pools
+    public static void shutdown() {
+        GroupCommitQueue queue;
+        ChangeMonitor monitor;
+        synchronized (DBManager.class) {
+            queue = writeQueue;
+            writeQueue = null;
+            monitor = changeMonitor;
+            changeMonitor = null;
+        }
+        if (monitor != null) {
+            monitor.stop();
+        }
+        // outside the lock, the queue still needs the writer pool to flush
+        if (queue != null) {
+            queue.shutdown();
+        }
+        synchronized (DBManager.class) {
+            if (readPool != null) {
+                readPool.close();
+                readPool = null;
+            }
+            if (writePool != null) {
+                writePool.close();
+                writePool = null;
+            }
+        }
+    }
 
+    // aborts whatever statement `thread` is running right now (see ConnectionPool.cancel). writes that went
+    // through the GroupCommitQueue run on the queue thread and aren't reached by this
+    static void cancelRunning(Thread thread) {
+        ConnectionPool read;
+        ConnectionPool write;
+        synchronized (DBManager.class) {
+            read = readPool;
+            write = writePool;
+        }
+        if (read != null) {
+            read.cancel(thread);
+        }
+        if (write != null) {
+            write.cancel(thread);
+        }
+    }
+
+    // tabellen lol. runs all pending schema migrations (tables, search index, indexes...), see SchemaMigrator.
+    // safe to call on every start, does nothing when the db is already up to date
+    public static void createTables() {
+        try (Connection conn = connectWriter()) {
+            SchemaMigrator.migrate(conn);
+            System.out.println("schema is at v" + SchemaMigrator.currentVersion(conn));
         } catch (SQLException e) {
-            e.printStackTrace();
+            System.out.println("error creating tables: " + e.getMessage());
         }
     }
 
+
+    // C in CRUD - Create
+    public static void addUser(String firstName, String lastName, String email, String phone) {
+        QueryMetrics.run("addUser", () -> {
+            try {
+                write(conn -> {
+                    try (PreparedStatement pstmt = conn.prepareStatement(ADD_USER)) {
+                        pstmt.setString(1, firstName);
+                        pstmt.setString(2, lastName);
+                        pstmt.setString(3, email);
+                        pstmt.setString(4, phone);
+                        return pstmt.executeUpdate();
+                    }
+                });
+                CACHE.users().added();
+                System.out.println("User added successfully.");
+            } catch (SQLException e) {
+                System.out.println("Error adding user: " + e.getMessage());
+            }
+        });
+    }
+
+    public static void addBook(String title, String author, int year, String isbn) {
+        QueryMetrics.run("addBook", () -> {
+            try {
+                write(conn -> {
+                    try (PreparedStatement pstmt = conn.prepareStatement(ADD_BOOK)) {
+                        pstmt.setString(1, title);
+                        pstmt.setString(2, author);
+                        pstmt.setInt(3, year);
+                        pstmt.setString(4, isbn);
+                        return pstmt.executeUpdate();
+                    }
+                });
+                CACHE.books().added();
+            } catch (SQLException e) {
+                e.printStackTrace();
+            }
+        });
+    }
+
     // R in CRUD - Read da suka
+    // books and users are served from the CatalogCache when the same query ran before and nothing changed since.
+    // the lists are read-only snapshots
     public static List<User> getAllUsers() {
+        return QueryMetrics.call("getAllUsers", () -> CACHE.users().list("all", DBManager::loadAllUsers));
+    }
+
+    private static List<User> loadAllUsers() {
         List<User> userList = new ArrayList<>();
-        String query = "SELECT * FROM users";
 
         try (Connection conn = connect();
-             Statement stmt = conn.createStatement();
-             ResultSet rs = stmt.executeQuery(query)) {
+             PreparedStatement pstmt = conn.prepareStatement(ALL_USERS);
+             ResultSet rs = pstmt.executeQuery()) {
 
             while (rs.next()) {
-                User user = new User(
-                    rs.getInt("id"),
-                    rs.getString("first_name"),
-                    rs.getString("last_name"),
-                    rs.getString("email"),
-                    rs.getString("phone")
-                );
-                userList.add(user);
+                userList.add(mapUser(rs));
             }
 
         } catch (SQLException e) {
             e.printStackTrace();
+            return null; // not cached, see CatalogCache
         }
         return userList;
     }
     
-    public static List<User> searchUsers(String keyword) {
+    // uses the full text index when there is one (prefix match on names + email, best matches first),
+    // otherwise the old LIKE scan. rows offset..offset+limit-1 of the matches
+    public static List<User> searchUsers(String keyword, int offset, int limit) {
+        return QueryMetrics.call("searchUsers", () -> CACHE.users().list("search:" + offset + ":" + limit + ":" + keyword,
+                () -> loadSearchUsers(keyword, offset, limit)));
+    }
+
+    private static List<User> loadSearchUsers(String keyword, int offset, int limit) {
         List<User> userList = new ArrayList<>();
-        String query = "SELECT * FROM users WHERE first_name LIKE ? OR last_name LIKE ?";
 
-        try (Connection conn = connect();
-             PreparedStatement pstmt = conn.prepareStatement(query)) {
+        try (Connection conn = connect()) {
+            String match = SearchIndex.toMatchQuery(keyword);
+            if (match != null && SearchIndex.isAvailable(conn)) {
+                try (PreparedStatement pstmt = conn.prepareStatement(
+                        SearchIndex.worthRanking(keyword) ? SEARCH_USERS_FTS : SEARCH_USERS_FTS_UNRANKED)) {
+                    pstmt.setString(1, match);
+                    pstmt.setInt(2, limit);
+                    pstmt.setInt(3, offset);
+                    ResultSet rs = pstmt.executeQuery();
+                    while (rs.next()) {
+                        userList.add(mapUser(rs));
+                    }
+                    return userList;
+                } catch (SQLException e) {
+                    System.out.println("full text search failed, using LIKE: " + e.getMessage());
+                    userList.clear();
+                }
+            }
+
+            try (PreparedStatement pstmt = conn.prepareStatement(SEARCH_USERS)) {
+                pstmt.setString(1, "%" + keyword + "%");
+                pstmt.setInt(2, limit);
+                pstmt.setInt(3, offset);
+
+                ResultSet rs = pstmt.executeQuery();
+                while (rs.next()) {
+                    userList.add(mapUser(rs));
+                }
+            }
+        } catch (SQLException e) {
+            e.printStackTrace();
+            return null; // not cached, see CatalogCache
+        }
+        return userList;
+    }
 
-            pstmt.setString(1, "%" + keyword + "%");
-            pstmt.setString(2, "%" + keyword + "%");
+
+    // at most limit users whose first name, last name or email starts with text (case-insensitive), or whose
+    // id it is. "anna sch" matches first + last name. sorted by name. cheap enough to run on every keystroke
+    public static List<User> lookupUsers(String text, int limit) {
+        String trimmed = text == null ? "" : text.trim();
+        if (trimmed.isEmpty() || limit <= 0) {
+            return List.of();
+        }
+        return QueryMetrics.call("lookupUsers", () -> CACHE.users().list("lookup:" + limit + ":" + trimmed,
+                () -> loadLookupUsers(trimmed, limit)));
+    }
+
+    private static List<User> loadLookupUsers(String text, int limit) {
+        List<User> userList = new ArrayList<>();
+        String[] words = text.split("\\s+", 2);
+        boolean fullName = words.length == 2;
+
+        try (Connection conn = connect();
+             PreparedStatement pstmt = conn.prepareStatement(fullName ? LOOKUP_USERS_FULL_NAME : LOOKUP_USERS)) {
+            if (fullName) {
+                pstmt.setString(1, likePrefix(words[0]));
+                pstmt.setString(2, likePrefix(words[1]));
+                pstmt.setInt(3, limit);
+            } else {
+                pstmt.setString(1, likePrefix(text));
+                pstmt.setInt(2, limit);
+                if (text.matches("\\d{1,18}")) {
+                    pstmt.setLong(3, Long.parseLong(text));
+                } else {
+                    pstmt.setNull(3, Types.INTEGER);
+                }
+            }
 
             ResultSet rs = pstmt.executeQuery();
             while (rs.next()) {
-                User user = new User(
-                    rs.getInt("id"),
-                    rs.getString("first_name"),
-                    rs.getString("last_name"),
-                    rs.getString("email"),
-                    rs.getString("phone")
-                );
-                userList.add(user);
+                userList.add(mapUser(rs));
             }
         } catch (SQLException e) {
             e.printStackTrace();
+            return null; // not cached, see CatalogCache
         }
         return userList;
     }
 
+    // 50%_off -> 50\%\_off%, so what was typed is matched literally
+    private static String likePrefix(String text) {
+        return text.replace("\\", "\\\\").replace("%", "\\%").replace("_", "\\_") + "%";
+    }
 
     // returns an Array of Book objects from models package.
     public static List<Book> getAllBooks() {
+        return QueryMetrics.call("getAllBooks", () -> CACHE.books().list("all", DBManager::loadAllBooks));
+    }
+
+    private static List<Book> loadAllBooks() {
         List<Book> bookList = new ArrayList<>();
-        String query = "SELECT books.*, " +
-                "(SELECT COUNT(*) FROM borrowed_books WHERE borrowed_books.book_id = books.id AND borrowed_books.return_date IS NULL) AS borrowed " +
-                "FROM books";
 
         try (Connection conn = connect();
-             Statement stmt = conn.createStatement();
-             ResultSet rs = stmt.executeQuery(query)) {
+             PreparedStatement pstmt = conn.prepareStatement(ALL_BOOKS);
+             ResultSet rs = pstmt.executeQuery()) {
 
             while (rs.next()) {
-                Book book = new Book(
-                    rs.getInt("id"),
-                    rs.getString("title"),
-                    rs.getString("author"),
-                    rs.getInt("year"),
-                    rs.getString("isbn"),
-                    rs.getInt("borrowed") > 0
-                );
-                bookList.add(book);
+                bookList.add(mapBook(rs));
             }
 
         } catch (SQLException e) {
             e.printStackTrace();
+            return null; // not cached, see CatalogCache
         }
         return bookList;
     }
     
+    // every loan still in borrowed_books: the open ones plus the returned ones LoanArchiver hasn't moved yet.
+    // the Borrowed Books tab uses the active/history queries below instead
     public static List<BorrowedBook> getBorrowedBooks() {
-        List<BorrowedBook> borrowedBooks = new ArrayList<>();
-        String query = "SELECT b.id, b.title, b.author, u.first_name, u.last_name, br.borrow_date, br.return_date " +
-                       "FROM borrowed_books br " +
-                       "JOIN books b ON br.book_id = b.id " +
-                       "JOIN users u ON br.user_id = u.id";
+        return QueryMetrics.call("getBorrowedBooks", () -> {
+            List<BorrowedBook> borrowedBooks = new ArrayList<>();
+
+            try (Connection conn = connect();
+                 PreparedStatement pstmt = conn.prepareStatement(BORROWED_BOOKS);
+                 ResultSet rs = pstmt.executeQuery()) {
+
+                while (rs.next()) {
+                    borrowedBooks.add(mapBorrowedBook(rs));
+                }
+            } catch (SQLException e) {
+                e.printStackTrace();
+            }
+            return borrowedBooks;
+        });
+    }
+
+    // same deal as searchUsers: FTS over title/author/isbn when available, LIKE on title/isbn otherwise
+    public static List<Book> searchBooks(String keyword, int offset, int limit) {
+        return QueryMetrics.call("searchBooks", () -> CACHE.books().list("search:" + offset + ":" + limit + ":" + keyword,
+                () -> loadSearchBooks(keyword, offset, limit)));
+    }
+
+    private static List<Book> loadSearchBooks(String keyword, int offset, int limit) {
+        List<Book> bookList = new ArrayList<>();
+
+        try (Connection conn = connect()) {
+            String match = SearchIndex.toMatchQuery(keyword);
+            if (match != null && SearchIndex.isAvailable(conn)) {
+                try (PreparedStatement pstmt = conn.prepareStatement(
+                        SearchIndex.worthRanking(keyword) ? SEARCH_BOOKS_FTS : SEARCH_BOOKS_FTS_UNRANKED)) {
+                    pstmt.setString(1, match);
+                    pstmt.setInt(2, limit);
+                    pstmt.setInt(3, offset);
+                    ResultSet rs = pstmt.executeQuery();
+                    while (rs.next()) {
+                        bookList.add(mapBook(rs));
+                    }
+                    return bookList;
+                } catch (SQLException e) {
+                    System.out.println("full text search failed, using LIKE: " + e.getMessage());
+                    bookList.clear();
+                }
+            }
+
+            try (PreparedStatement pstmt = conn.prepareStatement(SEARCH_BOOKS)) {
+                pstmt.setString(1, "%" + keyword + "%");
+                pstmt.setInt(2, limit);
+                pstmt.setInt(3, offset);
+
+                ResultSet rs = pstmt.executeQuery();
+                while (rs.next()) {
+                    bookList.add(mapBook(rs));
+                }
+            }
+        } catch (SQLException e) {
+            e.printStackTrace();
+            return null; // not cached, see CatalogCache
+        }
+        return bookList;
+    }
+
+    // single book/user by id, null if there is none
+    public static Book getBook(int id) {
+        return QueryMetrics.call("getBook", () -> CACHE.books().get(id, () -> loadOne(BOOK_BY_ID, id, DBManager::mapBook)));
+    }
+
+    public static User getUser(int id) {
+        return QueryMetrics.call("getUser", () -> CACHE.users().get(id, () -> loadOne(USER_BY_ID, id, DBManager::mapUser)));
+    }
+
+    private static <T> T loadOne(String sql, int id, QueryStream.RowMapper<T> mapper) {
+        try (Connection conn = connect();
+             PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            pstmt.setInt(1, id);
+
+            ResultSet rs = pstmt.executeQuery();
+            return rs.next() ? mapper.map(rs) : null;
+        } catch (SQLException e) {
+            e.printStackTrace();
+            return null;
+        }
+    }
+
+    private static User mapUser(ResultSet rs) throws SQLException {
+        return new User(
+            rs.getInt("id"),
+            rs.getString("first_name"),
+            rs.getString("last_name"),
+            rs.getString("email"),
+            rs.getString("phone")
+        );
+    }
+
+    // loan dates are epoch millis, NULL = not returned yet
+    private static Instant instant(ResultSet rs, String column) throws SQLException {
+        long millis = rs.getLong(column);
+        return rs.wasNull() ? null : Instant.ofEpochMilli(millis);
+    }
+
+    private static BorrowedBook mapBorrowedBook(ResultSet rs) throws SQLException {
+        return new BorrowedBook(
+            rs.getInt("loan_id"),
+            rs.getInt("id"),
+            rs.getString("title"),
+            rs.getString("author"),
+            rs.getString("first_name") + " " + rs.getString("last_name"),
+            instant(rs, "borrow_date"),
+            instant(rs, "return_date")
+        );
+    }
+
+    private static Book mapBook(ResultSet rs) throws SQLException {
+        return new Book(
+            rs.getInt("id"),
+            rs.getString("title"),
+            rs.getString("author"),
+            rs.getInt("year"),
+            rs.getString("isbn"),
+            !rs.getBoolean("available")
+        );
+    }
+
+
+    // streaming versions of the getAll* reads for exports/reports/reindexing: rows are mapped while you
+    // consume the stream, so any table size fits in constant memory. The stream holds a pooled connection
+    // until it is closed, use try-with-resources. fetch size comes from DBConfig.fetchSize()
+    public static Stream<User> streamUsers() {
+        return QueryMetrics.call("streamUsers", () -> stream(ALL_USERS, DBManager::mapUser));
+    }
+
+    public static Stream<Book> streamBooks() {
+        return QueryMetrics.call("streamBooks", () -> stream(ALL_BOOKS, DBManager::mapBook));
+    }
+
+    public static Stream<BorrowedBook> streamBorrowedBooks() {
+        return QueryMetrics.call("streamBorrowedBooks", () -> stream(BORROWED_BOOKS, DBManager::mapBorrowedBook));
+    }
+
+    private static <T> Stream<T> stream(String sql, QueryStream.RowMapper<T> mapper) {
+        Connection conn = connect();
+        if (conn == null) {
+            return Stream.empty();
+        }
+        try {
+            return QueryStream.of(conn, conn.prepareStatement(sql), DBConfig.fetchSize(), mapper);
+        } catch (SQLException e) {
+            e.printStackTrace();
+            try {
+                conn.close();
+            } catch (SQLException ignored) {
+                // already broken
+            }
+            return Stream.empty();
+        }
+    }
+
+    // paged reads for the GUI tables. afterId is the last id of the previous page (0 for the first page)
+    public static int countUsers() {
+        return QueryMetrics.call("countUsers", () -> CACHE.users().count("all", () -> tryCount(COUNT_USERS)));
+    }
+
+    // how many users have an id <= id, i.e. the row index of the user right after it
+    public static int countUsersUpTo(long id) {
+        return QueryMetrics.call("countUsersUpTo", () -> CACHE.users().count("upto:" + id, () -> tryCount(COUNT_USERS_UP_TO, id)));
+    }
+
+    public static List<User> getUsersPage(long afterId, int limit) {
+        return QueryMetrics.call("getUsersPage", () -> CACHE.users().list("page:" + afterId + ":" + limit, () -> loadUsersPage(afterId, limit)));
+    }
+
+    private static List<User> loadUsersPage(long afterId, int limit) {
+        List<User> userList = new ArrayList<>();
 
         try (Connection conn = connect();
-             Statement stmt = conn.createStatement();
-             ResultSet rs = stmt.executeQuery(query)) {
+             PreparedStatement pstmt = conn.prepareStatement(USERS_PAGE)) {
+            pstmt.setLong(1, afterId);
+            pstmt.setInt(2, limit);
 
+            ResultSet rs = pstmt.executeQuery();
             while (rs.next()) {
-                BorrowedBook book = new BorrowedBook(
-                    rs.getInt("id"),
-                    rs.getString("title"),
-                    rs.getString("author"),
-                    rs.getString("first_name") + " " + rs.getString("last_name"),
-                    rs.getString("borrow_date"),
-                    rs.getString("return_date")
-                );
-                borrowedBooks.add(book);
+                userList.add(mapUser(rs));
             }
         } catch (SQLException e) {
             e.printStackTrace();
+            return null; // not cached, see CatalogCache
         }
-        return borrowedBooks;
+        return userList;
+    }
+
+    // id of the user `offset` rows after afterId, -1 if there are not that many
+    public static long findUserIdAfter(long afterId, int offset) {
+        return QueryMetrics.call("findUserIdAfter", () -> keyAt(USERS_KEY_AT, afterId, offset));
+    }
+
+    public static int countBooks() {
+        return QueryMetrics.call("countBooks", () -> CACHE.books().count("all", () -> tryCount(COUNT_BOOKS)));
     }
 
-    public static List<Book> searchBooks(String keyword) {
+    public static int countBooksUpTo(long id) {
+        return QueryMetrics.call("countBooksUpTo", () -> CACHE.books().count("upto:" + id, () -> tryCount(COUNT_BOOKS_UP_TO, id)));
+    }
+
+    public static List<Book> getBooksPage(long afterId, int limit) {
+        return QueryMetrics.call("getBooksPage", () -> CACHE.books().list("page:" + afterId + ":" + limit, () -> loadBooksPage(afterId, limit)));
+    }
+
+    private static List<Book> loadBooksPage(long afterId, int limit) {
         List<Book> bookList = new ArrayList<>();
-        String query = "SELECT books.*, " +
-                "(SELECT COUNT(*) FROM borrowed_books " +
-                " WHERE borrowed_books.book_id = books.id AND borrowed_books.return_date IS NULL) AS borrowed " +
-                "FROM books " +
-                "WHERE title LIKE ? OR isbn LIKE ?";
 
         try (Connection conn = connect();
-             PreparedStatement pstmt = conn.prepareStatement(query)) {
-            
-            pstmt.setString(1, "%" + keyword + "%");
-            pstmt.setString(2, "%" + keyword + "%");
+             PreparedStatement pstmt = conn.prepareStatement(BOOKS_PAGE)) {
+            pstmt.setLong(1, afterId);
+            pstmt.setInt(2, limit);
 
             ResultSet rs = pstmt.executeQuery();
             while (rs.next()) {
-                Book book = new Book(
-                    rs.getInt("id"),
-                    rs.getString("title"),
-                    rs.getString("author"),
-                    rs.getInt("year"),
-                    rs.getString("isbn"),
-                    rs.getInt("borrowed") > 0
-                );
-                bookList.add(book);
+                bookList.add(mapBook(rs));
             }
         } catch (SQLException e) {
             e.printStackTrace();
+            return null; // not cached, see CatalogCache
         }
         return bookList;
     }
 
+    public static long findBookIdAfter(long afterId, int offset) {
+        return QueryMetrics.call("findBookIdAfter", () -> keyAt(BOOKS_KEY_AT, afterId, offset));
+    }
 
-    // U in CRUD - Update nahui
-    public static void updateUser(int id, String firstName, String lastName, String email, String phone) {
-        String query = "UPDATE users SET first_name = ?, last_name = ?, email = ?, phone = ? WHERE id = ?";
+    public static int countBorrowedBooks() {
+        return QueryMetrics.call("countBorrowedBooks", () -> count(COUNT_BORROWED_BOOKS));
+    }
+
+    public static int countBorrowedBooksUpTo(long loanId) {
+        return QueryMetrics.call("countBorrowedBooksUpTo", () -> count(COUNT_BORROWED_BOOKS_UP_TO, loanId));
+    }
+
+    // keyed by loan id (BorrowedBook.getLoanId()), not book id
+    public static List<BorrowedBook> getBorrowedBooksPage(long afterLoanId, int limit) {
+        return QueryMetrics.call("getBorrowedBooksPage", () -> {
+            List<BorrowedBook> borrowedBooks = new ArrayList<>();
+
+            try (Connection conn = connect();
+                 PreparedStatement pstmt = conn.prepareStatement(BORROWED_BOOKS_PAGE)) {
+                pstmt.setLong(1, afterLoanId);
+                pstmt.setInt(2, limit);
+
+                ResultSet rs = pstmt.executeQuery();
+                while (rs.next()) {
+                    borrowedBooks.add(mapBorrowedBook(rs));
+                }
+            } catch (SQLException e) {
+                e.printStackTrace();
+            }
+            return borrowedBooks;
+        });
+    }
+
+    public static long findLoanIdAfter(long afterLoanId, int offset) {
+        return QueryMetrics.call("findLoanIdAfter", () -> keyAt(BORROWED_BOOKS_KEY_AT, afterLoanId, offset));
+    }
+
+    // books that are lent out right now, by book id. cost depends on the number of open loans only
+    public static List<BorrowedBook> getActiveLoans() {
+        return QueryMetrics.call("getActiveLoans", () -> loans(ACTIVE_LOANS));
+    }
+
+    public static int countActiveLoans() {
+        return QueryMetrics.call("countActiveLoans", () -> count(COUNT_ACTIVE_LOANS));
+    }
+
+    public static int countActiveLoansUpTo(long bookId) {
+        return QueryMetrics.call("countActiveLoansUpTo", () -> count(COUNT_ACTIVE_LOANS_UP_TO, bookId));
+    }
+
+    // keyed by book id (BorrowedBook.getId()), unlike getBorrowedBooksPage
+    public static List<BorrowedBook> getActiveLoansPage(long afterBookId, int limit) {
+        return QueryMetrics.call("getActiveLoansPage", () -> loans(ACTIVE_LOANS_PAGE, afterBookId, limit));
+    }
+
+    public static long findActiveLoanBookIdAfter(long afterBookId, int offset) {
+        return QueryMetrics.call("findActiveLoanBookIdAfter", () -> keyAt(ACTIVE_LOANS_KEY_AT, afterBookId, offset));
+    }
+
+    // returned loans, archived or not, keyed by loan id
+    public static int countLoanHistory() {
+        return QueryMetrics.call("countLoanHistory", () -> count(COUNT_LOAN_HISTORY));
+    }
+
+    public static int countLoanHistoryUpTo(long loanId) {
+        return QueryMetrics.call("countLoanHistoryUpTo", () -> count(COUNT_LOAN_HISTORY_UP_TO, loanId));
+    }
+
+    public static List<BorrowedBook> getLoanHistoryPage(long afterLoanId, int limit) {
+        return QueryMetrics.call("getLoanHistoryPage", () -> loans(LOAN_HISTORY_PAGE, afterLoanId, limit));
+    }
+
+    public static long findHistoryLoanIdAfter(long afterLoanId, int offset) {
+        return QueryMetrics.call("findHistoryLoanIdAfter", () -> keyAt(LOAN_HISTORY_KEY_AT, afterLoanId, offset));
+    }
+
+    // at most limit loans borrowed in [from, to), including open and archived ones, oldest first
+    public static List<BorrowedBook> getLoansBorrowedBetween(Instant from, Instant to, int limit) {
+        return QueryMetrics.call("getLoansBorrowedBetween",
+                () -> loans(LOANS_BORROWED_BETWEEN, from.toEpochMilli(), to.toEpochMilli(), limit));
+    }
+
+    // open loans older than library.loan.days, longest out first
+    public static List<BorrowedBook> getOverdueLoans(int limit) {
+        return QueryMetrics.call("getOverdueLoans", () -> loans(OVERDUE_LOANS, overdueCutoff(), limit));
+    }
+
+    public static int countOverdueLoans() {
+        return QueryMetrics.call("countOverdueLoans", () -> count(COUNT_OVERDUE_LOANS, overdueCutoff()));
+    }
+
+    // borrowed before this = overdue
+    private static long overdueCutoff() {
+        return Instant.now().minus(Duration.ofDays(DBConfig.loanDays())).toEpochMilli();
+    }
+
+    // all zeros if the statistics tables are empty
+    public static CirculationStats getCirculationStats() {
+        return QueryMetrics.call("getCirculationStats", () -> {
+            try (Connection conn = connect();
+                 PreparedStatement pstmt = conn.prepareStatement(LOAN_TOTALS)) {
+                ResultSet rs = pstmt.executeQuery();
+                if (rs.next()) {
+                    return new CirculationStats(rs.getLong(1), rs.getLong(2), rs.getLong(3));
+                }
+            } catch (SQLException e) {
+                e.printStackTrace();
+            }
+            return new CirculationStats(0, 0, 0);
+        });
+    }
+
+    public static List<LoanCount> getMostBorrowedBooks(int limit) {
+        return QueryMetrics.call("getMostBorrowedBooks", () -> loanCounts(MOST_BORROWED_BOOKS, limit));
+    }
+
+    public static List<LoanCount> getMostActiveUsers(int limit) {
+        return QueryMetrics.call("getMostActiveUsers", () -> loanCounts(MOST_ACTIVE_USERS, limit));
+    }
+
+    // one entry per day from..to (both inclusive, UTC days), days without loans are zeros
+    public static List<DailyLoans> getDailyLoans(LocalDate from, LocalDate to) {
+        return QueryMetrics.call("getDailyLoans", () -> {
+            List<DailyLoans> days = new ArrayList<>();
+            try (Connection conn = connect();
+                 PreparedStatement pstmt = conn.prepareStatement(DAILY_LOANS)) {
+                pstmt.setLong(1, from.toEpochDay());
+                pstmt.setLong(2, to.toEpochDay());
+
+                ResultSet rs = pstmt.executeQuery();
+                long next = from.toEpochDay();
+                while (rs.next()) {
+                    long day = rs.getLong(1);
+                    for (; next < day; next++) {
+                        days.add(new DailyLoans(LocalDate.ofEpochDay(next), 0, 0));
+                    }
+                    days.add(new DailyLoans(LocalDate.ofEpochDay(day), rs.getLong(2), rs.getLong(3)));
+                    next = day + 1;
+                }
+                for (; next <= to.toEpochDay(); next++) {
+                    days.add(new DailyLoans(LocalDate.ofEpochDay(next), 0, 0));
+                }
+            } catch (SQLException e) {
+                e.printStackTrace();
+            }
+            return days;
+        });
+    }
+
+    private static List<LoanCount> loanCounts(String sql, int limit) {
+        List<LoanCount> counts = new ArrayList<>();
 
         try (Connection conn = connect();
-             PreparedStatement pstmt = conn.prepareStatement(query)) {
+             PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            pstmt.setInt(1, limit);
+
+            ResultSet rs = pstmt.executeQuery();
+            while (rs.next()) {
+                counts.add(new LoanCount(rs.getInt(1), rs.getString(2), rs.getLong(3), instant(rs, "last_borrowed")));
+            }
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+        return counts;
+    }
+
+    private static List<BorrowedBook> loans(String sql, Object... params) {
+        List<BorrowedBook> borrowedBooks = new ArrayList<>();
 
-            pstmt.setString(1, firstName);
-            pstmt.setString(2, lastName);
-            pstmt.setString(3, email);
-            pstmt.setString(4, phone);
-            pstmt.setInt(5, id);
-            pstmt.executeUpdate();
+        try (Connection conn = connect();
+             PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            for (int i = 0; i < params.length; i++) {
+                pstmt.setObject(i + 1, params[i]);
+            }
 
+            ResultSet rs = pstmt.executeQuery();
+            while (rs.next()) {
+                borrowedBooks.add(mapBorrowedBook(rs));
+            }
         } catch (SQLException e) {
             e.printStackTrace();
         }
+        return borrowedBooks;
     }
 
+    private static int count(String sql) {
+        Integer count = tryCount(sql);
+        return count == null ? 0 : count;
+    }
 
-    public static void updateBook(int id, String title, String author, int year, String isbn) {
-        String query = "UPDATE books SET title = ?, author = ?, year = ?, isbn = ? WHERE id = ?";
+    private static int count(String sql, long id) {
+        Integer count = tryCount(sql, id);
+        return count == null ? 0 : count;
+    }
 
+    // null when the query failed, for the counts the CatalogCache keeps
+    private static Integer tryCount(String sql) {
         try (Connection conn = connect();
-             PreparedStatement pstmt = conn.prepareStatement(query)) {
+             PreparedStatement pstmt = conn.prepareStatement(sql);
+             ResultSet rs = pstmt.executeQuery()) {
+            return rs.next() ? rs.getInt(1) : 0;
+        } catch (SQLException e) {
+            e.printStackTrace();
+            return null;
+        }
+    }
 
-            pstmt.setString(1, title);
-            pstmt.setString(2, author);
-            pstmt.setInt(3, year);
-            pstmt.setString(4, isbn);
-            pstmt.setInt(5, id);
-            pstmt.executeUpdate();
+    private static Integer tryCount(String sql, long id) {
+        try (Connection conn = connect();
+             PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            pstmt.setLong(1, id);
 
+            ResultSet rs = pstmt.executeQuery();
+            return rs.next() ? rs.getInt(1) : 0;
+        } catch (SQLException e) {
+            e.printStackTrace();
+            return null;
+        }
+    }
+
+    private static long keyAt(String sql, long afterId, int offset) {
+        try (Connection conn = connect();
+             PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            pstmt.setLong(1, afterId);
+            pstmt.setInt(2, offset);
+
+            ResultSet rs = pstmt.executeQuery();
+            return rs.next() ? rs.getLong(1) : -1;
         } catch (SQLException e) {
             e.printStackTrace();
+            return -1;
         }
     }
+
+
+    // U in CRUD - Update nahui
+    public static void updateUser(int id, String firstName, String lastName, String email, String phone) {
+        QueryMetrics.run("updateUser", () -> {
+            try {
+                write(conn -> {
+                    try (PreparedStatement pstmt = conn.prepareStatement(UPDATE_USER)) {
+                        pstmt.setString(1, firstName);
+                        pstmt.setString(2, lastName);
+                        pstmt.setString(3, email);
+                        pstmt.setString(4, phone);
+                        pstmt.setInt(5, id);
+                        return pstmt.executeUpdate();
+                    }
+                });
+                CACHE.users().changed(id);
+            } catch (SQLException e) {
+                e.printStackTrace();
+            }
+        });
+    }
+
+
+    public static void updateBook(int id, String title, String author, int year, String isbn) {
+        QueryMetrics.run("updateBook", () -> {
+            try {
+                write(conn -> {
+                    try (PreparedStatement pstmt = conn.prepareStatement(UPDATE_BOOK)) {
+                        pstmt.setString(1, title);
+                        pstmt.setString(2, author);
+                        pstmt.setInt(3, year);
+                        pstmt.setString(4, isbn);
+                        pstmt.setInt(5, id);
+                        return pstmt.executeUpdate();
+                    }
+                });
+                CACHE.books().changed(id);
+            } catch (SQLException e) {
+                e.printStackTrace();
+            }
+        });
+    }
     
     // pass the userId and bookId to add the book into borrowed_books table. Borrow_date creates automatically
     // borrowed_books table contains:
     // 	id INTEGER PRIMARY KEY AUTOINCREMENT
 	// 	user_id INTEGER NOT NULL
 	// 	book_id INTEGER NOT NULL
-	// 	borrow_date TEXT DEFAULT CURRENT_TIMESTAMP
-	// 	return_date TEXT
+	// 	borrow_date INTEGER DEFAULT now (epoch millis, see SchemaMigrator v9)
+	// 	return_date INTEGER
 	// 	FOREIGN KEY(user_id) REFERENCES users(id)
 	// 	FOREIGN KEY(book_id) REFERENCES books(id))
-    public static void borrowBook(int bookId, int userId) {
-        String query = "INSERT INTO borrowed_books (book_id, user_id) VALUES (?, ?)";
-
-        try (Connection conn = connect();
-             PreparedStatement pstmt = conn.prepareStatement(query)) {
-
-            pstmt.setInt(1, bookId);
-            pstmt.setInt(2, userId);
-            pstmt.executeUpdate();
+    // one conditional INSERT, so two desks can't lend the same copy. SQLITE_BUSY is retried with
+    // exponential backoff (BORROW_RETRIES attempts), the result tells the caller what happened
+    public static BorrowResult tryBorrow(int bookId, int userId) {
+        return QueryMetrics.call("tryBorrow", () -> {
+            long backoff = BORROW_BACKOFF_MS;
+            for (int attempt = 1; ; attempt++) {
+                try {
+                    // nothing inserted: missing book/user or lent out? asked on the same connection so nothing
+                    // changes in between
+                    boolean[] missing = {false};
+                    int inserted = write(conn -> {
+                        try (PreparedStatement pstmt = conn.prepareStatement(BORROW_BOOK)) {
+                            pstmt.setInt(1, bookId);
+                            pstmt.setInt(2, userId);
+                            int rows = pstmt.executeUpdate();
+                            if (rows > 0) {
+                                return rows;
+                            }
+                        }
+                        try (PreparedStatement pstmt = conn.prepareStatement(BORROW_MISSING)) {
+                            pstmt.setInt(1, bookId);
+                            pstmt.setInt(2, userId);
+                            try (ResultSet rs = pstmt.executeQuery()) {
+                                missing[0] = rs.next() && rs.getBoolean(1);
+                                return 0;
+                            }
+                        }
+                    });
+                    if (missing[0]) {
+                        return BorrowResult.NOT_FOUND;
+                    }
+                    if (inserted == 0) {
+                        return BorrowResult.ALREADY_LENT;
+                    }
+                    CACHE.books().patch(bookId, book -> withBorrowed(book, true));
+                    return BorrowResult.BORROWED;
+                } catch (SQLException e) {
+                    int code = e.getErrorCode() & 0xff; // primary SQLite result code
+                    if (code == SQLITE_CONSTRAINT) {
+                        return BorrowResult.ALREADY_LENT; // lost the race against the unique index
+                    }
+                    if (code != SQLITE_BUSY && code != SQLITE_LOCKED) {
+                        e.printStackTrace();
+                        return BorrowResult.FAILED;
+                    }
+                    if (attempt >= BORROW_RETRIES) {
+                        System.out.println("borrow of book " + bookId + " gave up, db busy: " + e.getMessage());
+                        return BorrowResult.BUSY;
+                    }
+                }
+                try {
+                    Thread.sleep(backoff + ThreadLocalRandom.current().nextLong(backoff));
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                    return BorrowResult.BUSY;
+                }
+                backoff = Math.min(backoff * 2, BORROW_BACKOFF_MAX_MS);
+            }
+        });
+    }
 
-        } catch (SQLException e) {
-            e.printStackTrace();
+    public static void borrowBook(int bookId, int userId) {
+        BorrowResult result = tryBorrow(bookId, userId);
+        if (result != BorrowResult.BORROWED) {
+            System.out.println("book " + bookId + " not borrowed: " + result);
         }
     }
     // adds return_date to the selected row, because of sql query filtering in getAllBooks basically makes the book returned.
-    public static void returnBook(int bookId) {
-        String query = "UPDATE borrowed_books SET return_date = CURRENT_TIMESTAMP WHERE book_id = ? AND return_date IS NULL";
+    // returns how many loans got closed: 1, 0 if the book wasn't lent out, -1 if the update failed
+    public static int returnBook(int bookId) {
+        return QueryMetrics.call("returnBook", () -> {
+            try {
+                int returned = write(conn -> {
+                    try (PreparedStatement pstmt = conn.prepareStatement(RETURN_BOOK)) {
+                        pstmt.setInt(1, bookId);
+                        return pstmt.executeUpdate();
+                    }
+                });
+                if (returned > 0) {
+                    CACHE.books().patch(bookId, book -> withBorrowed(book, false));
+                }
+                return returned;
+            } catch (SQLException e) {
+                e.printStackTrace();
+                return -1;
+            }
+        });
+    }
 
-        try (Connection conn = connect();
-             PreparedStatement pstmt = conn.prepareStatement(query)) {
+    private static Book withBorrowed(Book book, boolean borrowed) {
+        return new Book(book.getId(), book.getTitle(), book.getAuthor(), book.getYear(), book.getIsbn(), borrowed);
+    }
 
-            pstmt.setInt(1, bookId);
-            pstmt.executeUpdate();
+    // consistency check for books.available: ids of books whose flag doesn't match the loan table.
+    // should always be empty unless someone wrote to the db with the triggers missing
+    public static List<Integer> findAvailabilityMismatches() {
+        return QueryMetrics.call("findAvailabilityMismatches", () -> {
+            List<Integer> ids = new ArrayList<>();
 
-        } catch (SQLException e) {
-            e.printStackTrace();
-        }
+            try (Connection conn = connect();
+                 PreparedStatement pstmt = conn.prepareStatement(AVAILABILITY_MISMATCHES);
+                 ResultSet rs = pstmt.executeQuery()) {
+
+                while (rs.next()) {
+                    ids.add(rs.getInt("id"));
+                }
+            } catch (SQLException e) {
+                e.printStackTrace();
+            }
+            return ids;
+        });
+    }
+
+    // recomputes books.available for every book from the loan history, returns how many rows were wrong
+    public static int rebuildAvailability() {
+        return QueryMetrics.call("rebuildAvailability", () -> {
+            int broken = findAvailabilityMismatches().size();
+            if (broken == 0) {
+                return 0;
+            }
+            try (Connection conn = connectWriter();
+                 PreparedStatement pstmt = conn.prepareStatement(SchemaMigrator.REBUILD_AVAILABILITY)) {
+                pstmt.executeUpdate();
+                CACHE.books().clear();
+                System.out.println("fixed availability of " + broken + " book(s)");
+            } catch (SQLException e) {
+                e.printStackTrace();
+            }
+            return broken;
+        });
+    }
+
+    // recomputes the statistics tables from all loans in one transaction on the writer. the triggers keep them
+    // right on their own, this is for backfill and after bulk writes that went around them.
+    // blocks other writes while it runs (seconds with millions of loans)
+    public static void rebuildStatistics() {
+        QueryMetrics.run("rebuildStatistics", () -> {
+            long start = System.currentTimeMillis();
+            try (Connection conn = connectWriter()) {
+                if (conn == null) {
+                    throw new SQLException("no writer connection");
+                }
+                conn.setAutoCommit(false);
+                try {
+                    SchemaMigrator.exec(conn, SchemaMigrator.REBUILD_STATISTICS);
+                    conn.commit();
+                } catch (SQLException e) {
+                    conn.rollback();
+                    throw e;
+                } finally {
+                    conn.setAutoCommit(true);
+                }
+                System.out.printf("statistics rebuilt in %.1fs%n", (System.currentTimeMillis() - start) / 1000.0);
+            } catch (SQLException e) {
+                QueryMetrics.error();
+                e.printStackTrace();
+            }
+        });
     }
 
     // D in CRUD - Delete ebat'
     public static void deleteUser(int id) {
-        String query = "DELETE FROM users WHERE id = ?";
-
-        try (Connection conn = connect();
-             PreparedStatement pstmt = conn.prepareStatement(query)) {
+        QueryMetrics.run("deleteUser", () -> {
+            try {
+                write(conn -> {
+                    try (PreparedStatement pstmt = conn.prepareStatement(DELETE_USER)) {
+                        pstmt.setInt(1, id);
+                        return pstmt.executeUpdate();
+                    }
+                });
+                CACHE.users().changed(id);
+            } catch (SQLException e) {
+                e.printStackTrace();
+            }
+        });
+    }
+    
+    public static void deleteBook(int id) {
+        QueryMetrics.run("deleteBook", () -> {
+            try {
+                int affectedRows = write(conn -> {
+                    try (PreparedStatement pstmt = conn.prepareStatement(DELETE_BOOK)) {
+                        pstmt.setInt(1, id);
+                        return pstmt.executeUpdate();
+                    }
+                });
+                CACHE.books().changed(id);
+                if (affectedRows > 0) {
+                    System.out.println("Book deleted.");
+                } else {
+                    System.out.println("Book not found.");
+                }
+            } catch (SQLException e) {
+                System.out.println("Error deleting book: " + e.getMessage());
+            }
+        });
+    }
 
-            pstmt.setInt(1, id);
-            pstmt.executeUpdate();
+    // started on first use: watches the db for commits (also from other app instances) and tells listeners
+    // which tables changed. the CatalogCache is already registered, so external changes drop what it has
+    // for those tables
+    public static synchronized ChangeMonitor changeMonitor() {
+        if (changeMonitor == null) {
+            changeMonitor = new ChangeMonitor(DBConfig.url(), DBConfig.changePollMs());
+            changeMonitor.addListener(tables -> {
+                if (tables.contains("users")) {
+                    CACHE.users().clear();
+                }
+                if (tables.contains("books")) {
+                    CACHE.books().clear();
+                }
+            });
+            changeMonitor.start();
+        }
+        return changeMonitor;
+    }
 
-        } catch (SQLException e) {
-            e.printStackTrace();
+    // for own writes the monitor doesn't report (it skips everything our writer committed) but the
+    // listeners should hear about anyway, e.g. LoanArchiver moving loans in the background
+    static void tablesChanged(String... tables) {
+        ChangeMonitor monitor = changeMonitor;
+        if (monitor != null) {
+            monitor.announce(Set.of(tables));
         }
     }
-    
-    public static void deleteBook(int id) {
-        String sql = "DELETE FROM books WHERE id = ?";
-    
-        try (Connection conn = connect();
-             PreparedStatement pstmt = conn.prepareStatement(sql)) {
-            pstmt.setInt(1, id);
-            int affectedRows = pstmt.executeUpdate();
-            if (affectedRows > 0) {
-                System.out.println("Book deleted.");
-            } else {
-                System.out.println("Book not found.");
+
+    // drops everything cached, for writes that don't go through the methods above (bulk import, other processes...)
+    public static void clearCache() {
+        CACHE.clear();
+    }
+
+    public static String cacheStats() {
+        return CACHE.stats();
+    }
+
+    // runs one mutation on the writer. with -Dlibrary.write.groupCommit=true it goes through the
+    // GroupCommitQueue instead and shares a transaction with whatever other writes arrive at the same time.
+    // either way it only returns once the change is committed
+    private static int write(GroupCommitQueue.Mutation mutation) throws SQLException {
+        int rows = writeNow(mutation);
+        QueryMetrics.rows(rows);
+        return rows;
+    }
+
+    private static int writeNow(GroupCommitQueue.Mutation mutation) throws SQLException {
+        GroupCommitQueue queue = writeQueue();
+        if (queue != null) {
+            try {
+                return queue.submit(mutation).join();
+            } catch (CompletionException e) {
+                QueryMetrics.error(); // the statement failed on the queue thread
+                if (e.getCause() instanceof SQLException sqlError) {
+                    throw sqlError;
+                }
+                throw e;
             }
-        } catch (SQLException e) {
-            System.out.println("Error deleting book: " + e.getMessage());
         }
+        try (Connection conn = connectWriter()) {
+            if (conn == null) {
+                throw new SQLException("no writer connection");
+            }
+            return mutation.apply(conn);
+        }
+    }
+
+    private static synchronized GroupCommitQueue writeQueue() {
+        if (writeQueue == null && DBConfig.groupCommit()) {
+            writeQueue = new GroupCommitQueue(DBConfig.groupCommitWindowMs(), DBConfig.groupCommitMaxBatch());
+        }
+        return writeQueue;
     }
     
     
     
+    // fills the db with a small random library (a few hundred books with loan history) to click around in.
+    // for real volumes use DataGenerator directly
     public static void populateDatabase() {
-        // Sample users
-        String[][] users = {
-            {"John", "Doe", "john.doe@example.com", "1234567890"},
-            {"Alice", "Smith", "alice.smith@example.com", "9876543210"},
-            {"Bob", "Johnson", "bob.johnson@example.com", "5647382910"},
-            {"Emily", "Davis", "emily.davis@example.com", "1928374650"},
-            {"Michael", "Brown", "michael.brown@example.com", "1112223333"}
-        };
-
-        // Sample books
-        Object[][] books = {
-            {"The Great Gatsby", "F. Scott Fitzgerald", 1925, "9780743273565"},
-            {"To Kill a Mockingbird", "Harper Lee", 1960, "9780061120084"},
-            {"1984", "George Orwell", 1949, "9780451524935"},
-            {"Pride and Prejudice", "Jane Austen", 1813, "9780141439518"},
-            {"The Hobbit", "J.R.R. Tolkien", 1937, "9780547928227"}
-        };
+        DataGenerator.Options options = new DataGenerator.Options();
+        options.users = 50;
+        options.books = 500;
+        options.loans = 2_000;
 
         System.out.println("Populating database with test data...");
-
-        // Insert users
-        for (String[] user : users) {
-            addUser(user[0], user[1], user[2], user[3]);
-        }
-
-        // Insert books
-        for (Object[] book : books) {
-            addBook((String) book[0], (String) book[1], (int) book[2], (String) book[3]);
+        try {
+            System.out.println(new DataGenerator(options).generate());
+            System.out.println("Database populated successfully!");
+        } catch (SQLException e) {
+            System.out.println("error populating database: " + e.getMessage());
         }
-
-        System.out.println("Database populated successfully!");
     }
 
-
-
+    // java backend.DBManager [--rebuild-statistics]
     public static void main(String[] args) {
-        connect();
         createTables();
         // populateDatabase();
+        if (args.length > 0 && args[0].equals("--rebuild-statistics")) {
+            rebuildStatistics();
+            shutdown();
+        }
     }
 }
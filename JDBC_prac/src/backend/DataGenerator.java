@@ -0,0 +1,497 @@
+package backend;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+// Synthetic test data for load tests and benchmarks. Same seed + same options = same rows.
+// - book popularity is Zipf distributed: a few titles get borrowed all the time, most hardly ever
+//   (title words and authors are skewed the same way, so searches hit very different numbers of rows)
+// - loan history is spread over `years` up to `end`, in time order, no book is lent twice at the same time
+// - openShare of the books are lent out right now (one open loan each, about OVERDUE_SHARE of them overdue
+//   by DBConfig.loanDays())
+// - ISBN-13s (with a valid check digit) and emails are unique, derived from the row id
+// Rows go in through batched inserts on the writer connection with big transactions. With deferIndexes
+// (the default) the secondary indexes and triggers are dropped for the load and put back at the end,
+// followed by one FTS rebuild and one books.available and statistics recompute, that's what makes tens of
+// millions of rows a matter of minutes. Meant for scratch databases: kill it halfway and the indexes are gone.
+//
+// usage: java backend.DataGenerator [--users 100k] [--books 1m] [--loans 5m] [--open 0.05] [--years 5]
+//                                   [--end 2025-01-01] [--zipf 1.0] [--seed 42] [--batch 10000]
+//                                   [--commit 200000] [--keep-indexes]
+// rows are appended after whatever is in library.db.url already
+public class DataGenerator {
+
+    public static class Options {
+        public long seed = 42;
+        public int users = 1_000;
+        public int books = 10_000;
+        public long loans = 50_000;      // returned loans in the history
+        public double openShare = 0.05;  // fraction of the books currently lent out, on top of the history
+        public int years = 5;            // history length, at most 50
+        public LocalDate end = LocalDate.now(ZoneOffset.UTC); // pass a fixed date for reproducible dates
+        public double zipf = 1.0;        // skew of book popularity, 0 = uniform
+        public int batchSize = 10_000;
+        public int commitEvery = 200_000;
+        public boolean deferIndexes = true;
+    }
+
+    public static class Result {
+        public long users;
+        public long books;
+        public long loans;
+        public long openLoans;
+        public long skipped;  // loans that found no free book before `end`
+        public long millis;
+
+        @Override
+        public String toString() {
+            long rows = users + books + loans + openLoans;
+            return String.format("%d users, %d books, %d returned + %d open loans (%d skipped), %.1fs (%.0f rows/s)",
+                    users, books, loans, openLoans, skipped, millis / 1000.0, millis == 0 ? 0.0 : rows * 1000.0 / millis);
+        }
+    }
+
+    private static final String[] FIRST_NAMES = {
+        "Anna", "Ben", "Clara", "David", "Elena", "Felix", "Greta", "Hugo", "Ines", "Jonas",
+        "Karla", "Lukas", "Mia", "Noah", "Olga", "Paul", "Rosa", "Simon", "Tina", "Viktor",
+        "Amir", "Beatriz", "Chen", "Dmitri", "Emily", "Fatima", "George", "Hana", "Igor", "Julia",
+        "Kenji", "Laura", "Mateo", "Nadia", "Oscar", "Priya", "Quinn", "Sofia", "Tomas", "Yara"
+    };
+    private static final String[] LAST_NAMES = {
+        "Schmidt", "Novak", "Ivanova", "Brown", "Rossi", "Garcia", "Kowalski", "Meyer", "Petrov", "Smith",
+        "Weber", "Horvat", "Jensen", "Laine", "Dubois", "Silva", "Keller", "Nagy", "Popescu", "Fischer",
+        "Andersen", "Baker", "Costa", "Dimitrov", "Evans", "Fontaine", "Gruber", "Hansen", "Ivanov", "Johnson",
+        "Kaplan", "Lopez", "Moreau", "Nakamura", "Olsen", "Park", "Quinteros", "Richter", "Sato", "Tanaka"
+    };
+    private static final String[] EMAIL_DOMAINS = {"example.com", "example.org", "example.net", "mail.example"};
+
+    // title words are glued together from these, 40 x 40 = 1600 words
+    private static final String[] WORD_HEADS = {
+        "riv", "shad", "gard", "wint", "silv", "for", "emp", "lett", "oce", "ston",
+        "nigh", "crow", "glas", "stor", "harb", "secr", "jour", "isl", "mirr", "summ",
+        "cast", "drag", "voic", "orch", "lant", "des", "sign", "arch", "mead", "eng",
+        "bel", "cor", "dun", "fal", "gil", "hal", "kor", "lum", "mar", "tor"
+    };
+    private static final String[] WORD_TAILS = {
+        "er", "ow", "en", "ire", "and", "ell", "ane", "ost", "ide", "ora",
+        "ing", "ath", "ard", "ess", "ium", "ock", "ure", "ith", "ast", "ona",
+        "el", "ux", "ary", "ish", "orn", "eth", "ond", "ive", "ale", "ume",
+        "ex", "ia", "on", "ur", "is", "et", "ay", "um", "ol", "ar"
+    };
+    private static final int VOCABULARY = WORD_HEADS.length * WORD_TAILS.length;
+    private static final String[] TITLE_JOINS = {" of the ", " and the ", " in ", " ", " ", " "};
+
+    private static final String[] DEFERRED_TABLES = {"users", "books", "borrowed_books"};
+
+    private static final int DAY = 86_400;
+    private static final int MAX_LOAN_DAYS = 60;
+    private static final double OVERDUE_SHARE = 0.25;
+    // open loans are borrowed evenly over this many seconds before `end`, the oldest OVERDUE_SHARE of that
+    // window is past the loan period
+    private static final long OPEN_LOAN_MAX_AGE = Math.round((double) DBConfig.loanDays() * DAY / (1 - OVERDUE_SHARE));
+    private static final int BUSY_RETRIES = 8;
+
+    private final Options options;
+
+    public DataGenerator(Options options) {
+        this.options = options;
+    }
+
+    public Result generate() throws SQLException {
+        Options o = options;
+        if (o.years < 1 || o.years > 50) {
+            throw new IllegalArgumentException("years must be 1..50");
+        }
+        if (o.batchSize < 1 || o.commitEvery < 1) {
+            throw new IllegalArgumentException("batch and commit sizes must be positive");
+        }
+        Result result = new Result();
+        long start = System.currentTimeMillis();
+        DBManager.createTables();
+
+        try (Connection conn = DBManager.connectWriter()) {
+            if (conn == null) {
+                throw new SQLException("no writer connection");
+            }
+            List<String[]> deferred = o.deferIndexes ? dropDeferred(conn) : List.of();
+            // nothing here is worth an fsync per commit, the loaded file is synced once at the end
+            ConnectionPool.pragma(conn, "synchronous = OFF");
+            conn.setAutoCommit(false);
+            try {
+                Random rnd = new Random(o.seed);
+                long firstUser = maxId(conn, "users") + 1;
+                long firstBook = maxId(conn, "books") + 1;
+                insertUsers(conn, rnd, firstUser, result, start);
+                insertBooks(conn, rnd, firstBook, result, start);
+                conn.commit();
+                if (o.users > 0 && o.books > 0) {
+                    insertLoans(conn, rnd, firstUser, firstBook, result, start);
+                }
+                conn.commit();
+            } catch (SQLException | RuntimeException e) {
+                conn.rollback();
+                throw e;
+            } finally {
+                conn.setAutoCommit(true);
+                restoreDeferred(conn, deferred);
+                ConnectionPool.pragma(conn, "synchronous = " + DBConfig.synchronous());
+                DBManager.clearCache();
+            }
+            SchemaMigrator.exec(conn, "PRAGMA optimize");
+        }
+        result.millis = System.currentTimeMillis() - start;
+        return result;
+    }
+
+    private void insertUsers(Connection conn, Random rnd, long firstId, Result result, long start) throws SQLException {
+        try (PreparedStatement pstmt = conn.prepareStatement(
+                "INSERT INTO users (id, first_name, last_name, email, phone) VALUES (?, ?, ?, ?, ?)")) {
+            for (int i = 0; i < options.users; i++) {
+                long id = firstId + i;
+                String first = FIRST_NAMES[rnd.nextInt(FIRST_NAMES.length)];
+                String last = LAST_NAMES[rnd.nextInt(LAST_NAMES.length)];
+                pstmt.setLong(1, id);
+                pstmt.setString(2, first);
+                pstmt.setString(3, last);
+                pstmt.setString(4, (first + "." + last).toLowerCase(Locale.ROOT) + "." + Long.toString(id, 36)
+                        + "@" + EMAIL_DOMAINS[rnd.nextInt(EMAIL_DOMAINS.length)]);
+                pstmt.setString(5, String.format("+1%010d", (long) (rnd.nextDouble() * 1e10)));
+                add(conn, pstmt, ++result.users, result, start);
+            }
+            pstmt.executeBatch();
+        }
+    }
+
+    private void insertBooks(Connection conn, Random rnd, long firstId, Result result, long start) throws SQLException {
+        Zipf words = new Zipf(VOCABULARY, 1.0);
+        int authorCount = Math.max(10, options.books / 8);
+        Zipf authors = new Zipf(authorCount, 0.8);
+        int endYear = options.end.getYear();
+        try (PreparedStatement pstmt = conn.prepareStatement(
+                "INSERT INTO books (id, title, author, year, isbn) VALUES (?, ?, ?, ?, ?)")) {
+            for (int i = 0; i < options.books; i++) {
+                long id = firstId + i;
+                pstmt.setLong(1, id);
+                pstmt.setString(2, title(rnd, words));
+                pstmt.setString(3, author(authors.sample(rnd) - 1));
+                // mostly recent, with a long tail of classics
+                pstmt.setInt(4, endYear - (int) Math.min(200, Math.abs(rnd.nextGaussian()) * 30));
+                pstmt.setString(5, isbn(id));
+                add(conn, pstmt, ++result.books, result, start);
+            }
+            pstmt.executeBatch();
+        }
+    }
+
+    // walks the history in time order: loan i starts in the i-th slot of the period. the book comes from
+    // the Zipf distribution, if that one is lent out at that moment a few more are drawn, then uniform ones,
+    // then the loan waits for the last pick to come back
+    private void insertLoans(Connection conn, Random rnd, long firstUser, long firstBook, Result result, long start) throws SQLException {
+        Options o = options;
+        int books = o.books;
+        long period = (long) o.years * 365 * DAY;
+        long firstMillis = o.end.minusDays((long) o.years * 365).atStartOfDay(ZoneOffset.UTC).toInstant().toEpochMilli();
+
+        Zipf bookRank = new Zipf(books, o.zipf);
+        Zipf userRank = new Zipf(o.users, 0.5);
+        Permutation bookOfRank = new Permutation(books, rnd);
+        Permutation userOfRank = new Permutation(o.users, rnd);
+        int[] busyUntil = new int[books]; // seconds since history start the book comes back
+
+        try (PreparedStatement pstmt = conn.prepareStatement(
+                "INSERT INTO borrowed_books (book_id, user_id, borrow_date, return_date) VALUES (?, ?, ?, ?)")) {
+            long written = 0;
+            for (long i = 0; i < o.loans; i++) {
+                long slot = i * period / o.loans;
+                long slotEnd = (i + 1) * period / o.loans;
+                int borrowed = (int) (slot + (long) (rnd.nextDouble() * Math.max(1, slotEnd - slot)));
+                int book = bookOfRank.get(bookRank.sample(rnd) - 1);
+                for (int attempt = 0; busyUntil[book] > borrowed && attempt < BUSY_RETRIES; attempt++) {
+                    book = attempt < BUSY_RETRIES / 2 ? bookOfRank.get(bookRank.sample(rnd) - 1) : rnd.nextInt(books);
+                }
+                borrowed = Math.max(borrowed, busyUntil[book] + 3600);
+                if (borrowed >= period) {
+                    result.skipped++;
+                    continue;
+                }
+                // most loans take a couple of weeks, a few run long
+                int length = DAY + (int) Math.min((long) (MAX_LOAN_DAYS - 1) * DAY, (long) (-Math.log(1 - rnd.nextDouble()) * 14 * DAY));
+                int returned = (int) Math.min(period - 1, (long) borrowed + length);
+                busyUntil[book] = returned;
+
+                pstmt.setLong(1, firstBook + book);
+                pstmt.setLong(2, firstUser + userOfRank.get(userRank.sample(rnd) - 1));
+                pstmt.setLong(3, firstMillis + borrowed * 1000L);
+                pstmt.setLong(4, firstMillis + returned * 1000L);
+                result.loans++;
+                add(conn, pstmt, ++written, result, start);
+            }
+
+            // books lent out right now, picked through a second permutation so they're distinct.
+            // books still out in the history until `end` are passed over
+            long open = Math.min(books, Math.round(books * o.openShare));
+            Permutation openBooks = new Permutation(books, rnd);
+            for (int j = 0; j < books && result.openLoans < open; j++) {
+                int book = openBooks.get(j);
+                int earliest = (int) Math.max(busyUntil[book] + 3600L, period - OPEN_LOAN_MAX_AGE);
+                if (earliest >= period) {
+                    continue;
+                }
+                int borrowed = earliest + (int) (rnd.nextDouble() * (period - earliest));
+                pstmt.setLong(1, firstBook + book);
+                pstmt.setLong(2, firstUser + userOfRank.get(userRank.sample(rnd) - 1));
+                pstmt.setLong(3, firstMillis + borrowed * 1000L);
+                pstmt.setNull(4, java.sql.Types.INTEGER);
+                result.openLoans++;
+                add(conn, pstmt, ++written, result, start);
+            }
+            pstmt.executeBatch();
+        }
+    }
+
+    private void add(Connection conn, PreparedStatement pstmt, long n, Result result, long start) throws SQLException {
+        pstmt.addBatch();
+        if (n % options.batchSize == 0) {
+            pstmt.executeBatch();
+        }
+        if (n % options.commitEvery == 0) {
+            pstmt.executeBatch();
+            conn.commit();
+            long rows = result.users + result.books + result.loans + result.openLoans;
+            long elapsed = Math.max(1, System.currentTimeMillis() - start);
+            System.out.printf("%,d rows (%,.0f rows/s)%n", rows, rows * 1000.0 / elapsed);
+        }
+    }
+
+    // every index and trigger on the three tables except the implicit UNIQUE ones (sql is NULL for those),
+    // returned as {type, name, sql} so restoreDeferred can recreate them exactly as they were
+    private static List<String[]> dropDeferred(Connection conn) throws SQLException {
+        List<String[]> dropped = new ArrayList<>();
+        String tables = "'" + String.join("', '", DEFERRED_TABLES) + "'";
+        try (Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT type, name, sql FROM sqlite_master "
+                     + "WHERE type IN ('index', 'trigger') AND sql IS NOT NULL AND tbl_name IN (" + tables + ")")) {
+            while (rs.next()) {
+                dropped.add(new String[] {rs.getString(1), rs.getString(2), rs.getString(3)});
+            }
+        }
+        for (String[] d : dropped) {
+            SchemaMigrator.exec(conn, "DROP " + d[0].toUpperCase(Locale.ROOT) + " IF EXISTS \"" + d[1] + "\"");
+        }
+        return dropped;
+    }
+
+    // puts the indexes and triggers back and redoes in bulk what the triggers would have done row by row
+    private static void restoreDeferred(Connection conn, List<String[]> deferred) throws SQLException {
+        if (deferred.isEmpty()) {
+            return;
+        }
+        long start = System.currentTimeMillis();
+        boolean fts = false;
+        conn.setAutoCommit(false);
+        try {
+            for (String[] d : deferred) {
+                SchemaMigrator.exec(conn, d[2]);
+                fts |= d[1].startsWith("books_fts") || d[1].startsWith("users_fts");
+            }
+            if (fts) {
+                SchemaMigrator.exec(conn,
+                        "INSERT INTO books_fts(books_fts) VALUES ('rebuild')",
+                        "INSERT INTO users_fts(users_fts) VALUES ('rebuild')");
+            }
+            SchemaMigrator.exec(conn, SchemaMigrator.REBUILD_AVAILABILITY);
+            SchemaMigrator.exec(conn, SchemaMigrator.REBUILD_STATISTICS);
+            // the change counter triggers were off too, tell other instances about it in one go
+            SchemaMigrator.exec(conn, "UPDATE table_versions SET version = version + 1");
+            conn.commit();
+        } catch (SQLException e) {
+            conn.rollback();
+            throw e;
+        } finally {
+            conn.setAutoCommit(true);
+        }
+        System.out.printf("indexes and triggers rebuilt in %.1fs%n", (System.currentTimeMillis() - start) / 1000.0);
+    }
+
+    private static long maxId(Connection conn, String table) throws SQLException {
+        try (Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT COALESCE(MAX(id), 0) FROM " + table)) {
+            return rs.next() ? rs.getLong(1) : 0;
+        }
+    }
+
+    // 978 + 9 digits growing with the id + check digit. unique per id, and keeps the isbn index
+    // append-only, which matters a lot at tens of millions of rows
+    static String isbn(long id) {
+        String body = "978" + String.format("%09d", 100_000_000 + id * 7);
+        int sum = 0;
+        for (int i = 0; i < 12; i++) {
+            sum += (body.charAt(i) - '0') * (i % 2 == 0 ? 1 : 3);
+        }
+        return body + (10 - sum % 10) % 10;
+    }
+
+    private static String title(Random rnd, Zipf words) {
+        StringBuilder sb = new StringBuilder(rnd.nextInt(3) == 0 ? "The " : "");
+        appendWord(sb, words.sample(rnd) - 1);
+        int more = rnd.nextInt(3);
+        for (int w = 0; w < more; w++) {
+            sb.append(TITLE_JOINS[rnd.nextInt(TITLE_JOINS.length)]);
+            appendWord(sb, words.sample(rnd) - 1);
+        }
+        return sb.toString();
+    }
+
+    private static void appendWord(StringBuilder sb, int index) {
+        String head = WORD_HEADS[index % WORD_HEADS.length];
+        sb.append(Character.toUpperCase(head.charAt(0))).append(head, 1, head.length())
+                .append(WORD_TAILS[index / WORD_HEADS.length]);
+    }
+
+    // author n always gets the same name, with a middle initial so there are 40*40*26 different ones
+    private static String author(int n) {
+        int f = FIRST_NAMES.length;
+        int l = LAST_NAMES.length;
+        return FIRST_NAMES[n % f] + " " + (char) ('A' + (n / (f * l)) % 26) + ". " + LAST_NAMES[(n / f) % l];
+    }
+
+    // a random word from the title vocabulary, for search benchmarks
+    public static String titleWord(Random rnd) {
+        StringBuilder sb = new StringBuilder();
+        appendWord(sb, rnd.nextInt(VOCABULARY));
+        return sb.toString();
+    }
+
+    public static String lastName(Random rnd) {
+        return LAST_NAMES[rnd.nextInt(LAST_NAMES.length)];
+    }
+
+    // "10k", "1m", "2500"
+    public static long parseCount(String count) {
+        String s = count.trim().toLowerCase(Locale.ROOT).replace("_", "");
+        if (s.endsWith("k")) {
+            return Long.parseLong(s.substring(0, s.length() - 1)) * 1_000;
+        }
+        if (s.endsWith("m")) {
+            return Long.parseLong(s.substring(0, s.length() - 1)) * 1_000_000;
+        }
+        return Long.parseLong(s);
+    }
+
+    // Zipf over 1..n, rejection-inversion sampling (Hoermann & Derflinger), O(1) per draw and no
+    // n-sized table, so it's fine for tens of millions of ranks. exponent 0 is uniform
+    static final class Zipf {
+        private final int n;
+        private final double s;
+        private final double hIntegralX1;
+        private final double hIntegralN;
+        private final double squeeze;
+
+        Zipf(int n, double exponent) {
+            this.n = n;
+            this.s = exponent;
+            hIntegralX1 = hIntegral(1.5) - 1.0;
+            hIntegralN = hIntegral(n + 0.5);
+            squeeze = 2.0 - hIntegralInverse(hIntegral(2.5) - h(2.0));
+        }
+
+        int sample(Random rnd) {
+            if (s <= 0) {
+                return 1 + rnd.nextInt(n);
+            }
+            while (true) {
+                double u = hIntegralN + rnd.nextDouble() * (hIntegralX1 - hIntegralN);
+                double x = hIntegralInverse(u);
+                int k = (int) Math.max(1, Math.min(n, (long) (x + 0.5)));
+                if (k - x <= squeeze || u >= hIntegral(k + 0.5) - h(k)) {
+                    return k;
+                }
+            }
+        }
+
+        private double h(double x) {
+            return Math.exp(-s * Math.log(x));
+        }
+
+        private double hIntegral(double x) {
+            double logX = Math.log(x);
+            return expm1OverX((1.0 - s) * logX) * logX;
+        }
+
+        private double hIntegralInverse(double x) {
+            double t = Math.max(-1.0, x * (1.0 - s));
+            return Math.exp(log1pOverX(t) * x);
+        }
+
+        private static double log1pOverX(double x) {
+            return Math.abs(x) > 1e-8 ? Math.log1p(x) / x : 1.0 - x * (0.5 - x * (1.0 / 3.0 - 0.25 * x));
+        }
+
+        private static double expm1OverX(double x) {
+            return Math.abs(x) > 1e-8 ? Math.expm1(x) / x : 1.0 + x * 0.5 * (1.0 + x / 3.0 * (1.0 + 0.25 * x));
+        }
+    }
+
+    // random-looking bijection of 0..n-1 (multiply by something coprime to n, add an offset), so the
+    // popular ranks are scattered over the table instead of being the lowest ids
+    static final class Permutation {
+        private final long n;
+        private final long multiplier;
+        private final long offset;
+
+        Permutation(int n, Random rnd) {
+            this.n = n;
+            long m = (n / 2 + rnd.nextInt(Math.max(1, n / 2))) | 1;
+            while (gcd(m, n) != 1) {
+                m += 2;
+            }
+            this.multiplier = m % Math.max(1, n);
+            this.offset = rnd.nextInt(Math.max(1, n));
+        }
+
+        int get(long i) {
+            return (int) ((i * multiplier + offset) % n);
+        }
+
+        private static long gcd(long a, long b) {
+            return b == 0 ? a : gcd(b, a % b);
+        }
+    }
+
+    public static void main(String[] args) throws SQLException {
+        Options o = new Options();
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--users" -> o.users = (int) parseCount(args[++i]);
+                case "--books" -> o.books = (int) parseCount(args[++i]);
+                case "--loans" -> o.loans = parseCount(args[++i]);
+                case "--open" -> o.openShare = Double.parseDouble(args[++i]);
+                case "--years" -> o.years = Integer.parseInt(args[++i]);
+                case "--end" -> o.end = LocalDate.parse(args[++i]);
+                case "--zipf" -> o.zipf = Double.parseDouble(args[++i]);
+                case "--seed" -> o.seed = Long.parseLong(args[++i]);
+                case "--batch" -> o.batchSize = Integer.parseInt(args[++i]);
+                case "--commit" -> o.commitEvery = Integer.parseInt(args[++i]);
+                case "--keep-indexes" -> o.deferIndexes = false;
+                default -> {
+                    System.out.println("unknown option " + args[i] + ", known: " + Arrays.toString(new String[] {
+                        "--users", "--books", "--loans", "--open", "--years", "--end", "--zipf", "--seed",
+                        "--batch", "--commit", "--keep-indexes"}));
+                    return;
+                }
+            }
+        }
+        System.out.println(new DataGenerator(o).generate());
+        DBManager.shutdown();
+    }
+}
@@ -0,0 +1,172 @@
+package backend;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Savepoint;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+// Optional write-behind queue with group commit. Callers submit small mutations, one writer thread collects
+// whatever arrives within windowMs (up to maxBatch) and runs it all in ONE transaction, so a burst of desk
+// activity pays for one fsync instead of one per write. Every mutation runs inside its own savepoint,
+// a failing one is rolled back alone and only its caller gets the error.
+// Futures complete after the commit returned, i.e. once the write is durable.
+public class GroupCommitQueue {
+
+    public interface Mutation {
+        // returns affected rows, like executeUpdate
+        int apply(Connection conn) throws SQLException;
+    }
+
+    private static final class Task {
+        final Mutation mutation;
+        final CompletableFuture<Integer> future = new CompletableFuture<>();
+        int result;
+        SQLException error;
+
+        Task(Mutation mutation) {
+            this.mutation = mutation;
+        }
+    }
+
+    private final BlockingQueue<Task> queue = new LinkedBlockingQueue<>();
+    private final long windowMs;
+    private final int maxBatch;
+    private final Thread writer;
+    private volatile boolean running = true;
+    // submit() checks running and enqueues under this lock, shutdown() flips running under it, so no task
+    // can land in the queue after the writer has drained it for the last time
+    private final Object submitLock = new Object();
+
+    // counters for checking how well writes get grouped
+    private long commits;
+    private long mutations;
+
+    public GroupCommitQueue(long windowMs, int maxBatch) {
+        this.windowMs = windowMs;
+        this.maxBatch = Math.max(1, maxBatch);
+        this.writer = new Thread(this::run, "group-commit-writer");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    public CompletableFuture<Integer> submit(Mutation mutation) {
+        Task task = new Task(mutation);
+        synchronized (submitLock) {
+            if (running) {
+                queue.add(task);
+                return task.future;
+            }
+        }
+        task.future.completeExceptionally(new SQLException("write queue is shut down"));
+        return task.future;
+    }
+
+    // stops taking new work, finishes what is queued and waits for the writer thread
+    public void shutdown() {
+        synchronized (submitLock) {
+            running = false;
+        }
+        writer.interrupt();
+        try {
+            writer.join(10_000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (!writer.isAlive()) {
+            failRemaining(); // shouldn't find anything, but nobody may wait forever on a dead writer
+        }
+    }
+
+    public synchronized String stats() {
+        return String.format("group commit: %d mutations in %d commits (%.1f per commit)",
+                mutations, commits, commits == 0 ? 0.0 : (double) mutations / commits);
+    }
+
+    private void run() {
+        List<Task> group = new ArrayList<>(maxBatch);
+        while (running || !queue.isEmpty()) {
+            try {
+                Task first = running ? queue.take() : queue.poll();
+                if (first == null) {
+                    break;
+                }
+                group.add(first);
+                long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(windowMs);
+                while (group.size() < maxBatch) {
+                    long left = deadline - System.nanoTime();
+                    Task next = (left > 0 && running) ? queue.poll(left, TimeUnit.NANOSECONDS) : queue.poll();
+                    if (next == null) {
+                        break;
+                    }
+                    group.add(next);
+                }
+            } catch (InterruptedException e) {
+                // shutdown(): loop again and drain without waiting
+                if (group.isEmpty()) {
+                    continue;
+                }
+            }
+            Thread.interrupted(); // don't let a shutdown interrupt break the pool wait in commitGroup
+            commitGroup(group);
+            group.clear();
+        }
+        failRemaining();
+    }
+
+    private void failRemaining() {
+        Task late;
+        while ((late = queue.poll()) != null) {
+            late.future.completeExceptionally(new SQLException("write queue is shut down"));
+        }
+    }
+
+    private void commitGroup(List<Task> group) {
+        try (Connection conn = DBManager.connectWriter()) {
+            if (conn == null) {
+                throw new SQLException("no writer connection");
+            }
+            conn.setAutoCommit(false);
+            try {
+                for (Task task : group) {
+                    Savepoint sp = conn.setSavepoint();
+                    try {
+                        task.result = task.mutation.apply(conn);
+                        conn.releaseSavepoint(sp);
+                    } catch (SQLException e) {
+                        conn.rollback(sp);
+                        conn.releaseSavepoint(sp);
+                        task.error = e;
+                    }
+                }
+                conn.commit();
+            } catch (SQLException e) {
+                conn.rollback();
+                throw e;
+            } finally {
+                conn.setAutoCommit(true);
+            }
+        } catch (SQLException e) {
+            for (Task task : group) {
+                task.future.completeExceptionally(e);
+            }
+            return;
+        }
+
+        synchronized (this) {
+            commits++;
+            mutations += group.size();
+        }
+        for (Task task : group) {
+            if (task.error != null) {
+                task.future.completeExceptionally(task.error);
+            } else {
+                task.future.complete(task.result);
+            }
+        }
+    }
+}
@@ -0,0 +1,160 @@
+package backend;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+// Moves loans returned more than library.archive.afterDays ago from borrowed_books into loan_archive, so the
+// loan table (and everything that scans or indexes it) stays the size of the last months instead of growing
+// for years. Works in batches of library.archive.batchSize loans, each one a short transaction of its own on
+// the writer, so the desks borrowing and returning books never wait for more than one batch.
+// Only returned loans move, so books.available and the book/user caches don't change.
+// start() runs it every library.archive.intervalHours on a daemon thread, archive() runs it once.
+// usage: java backend.LoanArchiver [--days 365] [--batch 5000]
+public class LoanArchiver {
+    private static final long FIRST_RUN_DELAY_MIN = 1; // let startup finish first
+
+    // [?1, ?2] is the id range of one batch, found by BATCH_END first so copy and delete see the same rows
+    private static final String BATCH_END = "SELECT MAX(id) FROM (SELECT id FROM borrowed_books "
+            + "WHERE id > ? AND return_date < ? ORDER BY id LIMIT ?)";
+    private static final String COPY = "INSERT OR REPLACE INTO loan_archive (id, user_id, book_id, borrow_date, return_date) "
+            + "SELECT id, user_id, book_id, borrow_date, return_date FROM borrowed_books "
+            + "WHERE id > ?1 AND id <= ?2 AND return_date < ?3";
+    private static final String DELETE = "DELETE FROM borrowed_books WHERE id > ?1 AND id <= ?2 AND return_date < ?3";
+
+    private static ScheduledExecutorService timer;
+
+    private LoanArchiver() {}
+
+    // starts the periodic archiving, unless library.archive.afterDays or intervalHours is 0. once per process
+    public static synchronized void start() {
+        int days = DBConfig.archiveAfterDays();
+        long hours = DBConfig.archiveIntervalHours();
+        if (timer != null || days <= 0 || hours <= 0) {
+            return;
+        }
+        timer = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "loan-archiver");
+            t.setDaemon(true);
+            return t;
+        });
+        timer.scheduleWithFixedDelay(() -> {
+            try {
+                archive(days, DBConfig.archiveBatchSize());
+            } catch (RuntimeException e) {
+                e.printStackTrace(); // would cancel the schedule otherwise
+            }
+        }, FIRST_RUN_DELAY_MIN, TimeUnit.HOURS.toMinutes(hours), TimeUnit.MINUTES);
+    }
+
+    public static synchronized void stop() {
+        if (timer != null) {
+            timer.shutdownNow();
+            timer = null;
+        }
+    }
+
+    // moves everything returned more than olderThanDays ago, returns how many loans moved.
+    // stops at the first error, the batches committed until then stay archived
+    public static long archive(int olderThanDays, int batchSize) {
+        Instant cutoffTime = Instant.now().minus(Duration.ofDays(olderThanDays));
+        long cutoff = cutoffTime.toEpochMilli();
+        long start = System.nanoTime();
+        long moved = 0;
+        long afterId = 0;
+        try {
+            while (true) {
+                long from = afterId;
+                long[] batch = QueryMetrics.call("archiveLoans", () -> archiveBatch(from, cutoff, batchSize));
+                if (batch == null) {
+                    break;
+                }
+                moved += batch[1];
+                afterId = batch[0];
+            }
+        } catch (RuntimeException e) {
+            if (!(e.getCause() instanceof SQLException)) {
+                throw e;
+            }
+            System.out.println("archiving loans failed: " + e.getCause().getMessage());
+        }
+        if (moved > 0) {
+            DBManager.tablesChanged("borrowed_books", "loan_archive");
+            System.out.println(String.format("archived %d loans returned before %s in %.1fs",
+                    moved, cutoffTime, (System.nanoTime() - start) / 1e9));
+        }
+        return moved;
+    }
+
+    // one batch in one transaction. {last id, loans moved}, null when there's nothing left
+    private static long[] archiveBatch(long afterId, long cutoff, int batchSize) {
+        try (Connection conn = DBManager.connectWriter()) {
+            if (conn == null) {
+                throw new SQLException("no writer connection");
+            }
+            conn.setAutoCommit(false);
+            try {
+                long lastId;
+                try (PreparedStatement pstmt = conn.prepareStatement(BATCH_END)) {
+                    pstmt.setLong(1, afterId);
+                    pstmt.setLong(2, cutoff);
+                    pstmt.setInt(3, batchSize);
+                    ResultSet rs = pstmt.executeQuery();
+                    lastId = rs.next() ? rs.getLong(1) : 0; // MAX of nothing is NULL, i.e. 0
+                    if (lastId == 0) {
+                        conn.rollback();
+                        return null;
+                    }
+                }
+                int copied = update(conn, COPY, afterId, lastId, cutoff);
+                int deleted = update(conn, DELETE, afterId, lastId, cutoff);
+                if (copied != deleted) {
+                    throw new SQLException("copied " + copied + " loans but deleted " + deleted);
+                }
+                conn.commit();
+                QueryMetrics.rows(deleted);
+                return new long[] {lastId, deleted};
+            } catch (SQLException | RuntimeException e) {
+                conn.rollback();
+                throw e;
+            } finally {
+                conn.setAutoCommit(true);
+            }
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private static int update(Connection conn, String sql, long afterId, long lastId, long cutoff) throws SQLException {
+        try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            pstmt.setLong(1, afterId);
+            pstmt.setLong(2, lastId);
+            pstmt.setLong(3, cutoff);
+            return pstmt.executeUpdate();
+        }
+    }
+
+    public static void main(String[] args) {
+        int days = DBConfig.archiveAfterDays();
+        int batch = DBConfig.archiveBatchSize();
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--days" -> days = Integer.parseInt(args[++i]);
+                case "--batch" -> batch = Integer.parseInt(args[++i]);
+                default -> {
+                    System.out.println("usage: java backend.LoanArchiver [--days " + days + "] [--batch " + batch + "]");
+                    return;
+                }
+            }
+        }
+        DBManager.createTables();
+        archive(days, batch);
+        DBManager.shutdown();
+    }
+}
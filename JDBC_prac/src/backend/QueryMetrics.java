@@ -0,0 +1,348 @@
+package backend;
+
+import java.lang.management.ManagementFactory;
+import java.time.Instant;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+// Per-operation numbers for the db layer. Every public DBManager method runs inside call()/run() with its
+// own name, and while it runs the pieces underneath report to it:
+//   - latency of the whole call (cache hits included, that's what the caller waits for), as a Histogram
+//   - rows returned (lists) or written (write()), calls that hit an SQLException somewhere
+//   - time spent waiting for a pooled connection (ConnectionPool)
+// StatementCache times every execute of a cached statement, the ones slower than library.metrics.slowQueryMs
+// go to the slow query log (the last SLOW_LOG_SIZE, nothing is printed per query).
+// Everything is visible over JMX (backend:type=QueryMetrics) and as a text table from dump(), which can
+// also be printed every library.metrics.dumpIntervalSec. The bound parameters are names, emails and so on,
+// so they're only in the log on JMX, dump() leaves them out.
+public class QueryMetrics {
+    private static final boolean ENABLED = DBConfig.metricsEnabled();
+    private static final int SLOW_LOG_SIZE = 100;
+    private static final int MAX_PARAM_LENGTH = 100;
+
+    private static final ConcurrentHashMap<String, Op> OPS = new ConcurrentHashMap<>();
+    private static final ThreadLocal<Scope> CURRENT = new ThreadLocal<>();
+    private static final ArrayDeque<SlowQuery> SLOW_LOG = new ArrayDeque<>();
+    private static volatile long slowQueryNanos = TimeUnit.MILLISECONDS.toNanos(DBConfig.slowQueryMs());
+    private static volatile Instant since = Instant.now();
+
+    static {
+        if (ENABLED) {
+            registerMBean();
+            startDumps(DBConfig.metricsDumpIntervalSec());
+        }
+    }
+
+    private static final class Op {
+        final String name;
+        final Histogram latency = new Histogram();
+        final LongAdder errors = new LongAdder();
+        final LongAdder rows = new LongAdder();
+        final LongAdder waitNanos = new LongAdder();
+        final AtomicLong maxWaitNanos = new AtomicLong();
+
+        Op(String name) {
+            this.name = name;
+        }
+    }
+
+    // the operation the current thread is inside of. nested calls (borrowBook -> tryBorrow) get their own.
+    // op is null when only JFR is listening (library.metrics.enabled=false)
+    private static final class Scope {
+        final String name;
+        final Op op;
+        final Scope outer;
+        long rows;
+        boolean failed;
+
+        Scope(String name, Op op, Scope outer) {
+            this.name = name;
+            this.op = op;
+            this.outer = outer;
+        }
+    }
+
+    private QueryMetrics() {}
+
+    public static boolean enabled() {
+        return ENABLED;
+    }
+
+    // runs body as operation `name`. a returned Collection counts as rows read.
+    // also emits a DBCallEvent when a flight recording is running
+    public static <T> T call(String name, Supplier<T> body) {
+        DBCallEvent event = new DBCallEvent();
+        if (!ENABLED && !event.isEnabled()) {
+            return body.get();
+        }
+        event.begin();
+        Scope scope = enter(name);
+        long start = System.nanoTime();
+        try {
+            T result = body.get();
+            if (result instanceof Collection<?> c) {
+                scope.rows += c.size();
+            }
+            return result;
+        } catch (RuntimeException | Error e) {
+            scope.failed = true;
+            throw e;
+        } finally {
+            exit(scope, System.nanoTime() - start, event);
+        }
+    }
+
+    public static void run(String name, Runnable body) {
+        call(name, () -> {
+            body.run();
+            return null;
+        });
+    }
+
+    private static Scope enter(String name) {
+        Op op = null;
+        if (ENABLED) {
+            op = OPS.get(name);
+            if (op == null) {
+                op = OPS.computeIfAbsent(name, Op::new);
+            }
+        }
+        Scope scope = new Scope(name, op, CURRENT.get());
+        CURRENT.set(scope);
+        return scope;
+    }
+
+    private static void exit(Scope scope, long nanos, DBCallEvent event) {
+        CURRENT.set(scope.outer);
+        Op op = scope.op;
+        if (op != null) {
+            op.latency.record(nanos);
+            op.rows.add(scope.rows);
+            if (scope.failed) {
+                op.errors.increment();
+            }
+        }
+        if (event.shouldCommit()) {
+            event.operation = scope.name;
+            event.rows = scope.rows;
+            event.failed = scope.failed;
+            event.commit();
+        }
+    }
+
+    // rows written by the current operation
+    static void rows(long n) {
+        Scope scope = CURRENT.get();
+        if (scope != null) {
+            scope.rows += n;
+        }
+    }
+
+    // an SQLException happened inside the current operation, even if DBManager swallows it afterwards
+    static void error() {
+        Scope scope = CURRENT.get();
+        if (scope != null) {
+            scope.failed = true;
+        }
+    }
+
+    static void connectionWait(long nanos) {
+        Scope scope = CURRENT.get();
+        if (scope != null && scope.op != null) {
+            scope.op.waitNanos.add(nanos);
+            if (nanos > scope.op.maxWaitNanos.get()) {
+                scope.op.maxWaitNanos.accumulateAndGet(nanos, Math::max);
+            }
+        }
+    }
+
+    static boolean isSlow(long nanos) {
+        return nanos >= slowQueryNanos;
+    }
+
+    // one execute of a cached statement that took longer than the threshold, batch > 0 for executeBatch
+    static void slowQuery(String sql, Object[] params, int batch, long nanos) {
+        Scope scope = CURRENT.get();
+        SlowQuery slow = new SlowQuery(Instant.now().toString(), scope == null ? "-" : scope.name,
+                sql, describe(params, batch), nanos / 1e6);
+        synchronized (SLOW_LOG) {
+            if (SLOW_LOG.size() >= SLOW_LOG_SIZE) {
+                SLOW_LOG.removeFirst();
+            }
+            SLOW_LOG.addLast(slow);
+        }
+    }
+
+    private static String describe(Object[] params, int batch) {
+        StringBuilder sb = new StringBuilder(batch > 0 ? "batch of " + batch + ", last " : "");
+        sb.append('[');
+        for (int i = 0; params != null && i < params.length; i++) {
+            String value = params[i] instanceof String s ? "'" + s + "'" : String.valueOf(params[i]);
+            if (value.length() > MAX_PARAM_LENGTH) {
+                value = value.substring(0, MAX_PARAM_LENGTH) + "...";
+            }
+            sb.append(i == 0 ? "" : ", ").append(value);
+        }
+        return sb.append(']').toString();
+    }
+
+    public static long slowQueryThresholdMs() {
+        return TimeUnit.NANOSECONDS.toMillis(slowQueryNanos);
+    }
+
+    public static void setSlowQueryThresholdMs(long ms) {
+        slowQueryNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(0, ms));
+    }
+
+    // snapshot, busiest (total time) first
+    public static List<OperationStats> operations() {
+        List<OperationStats> list = new ArrayList<>();
+        for (Op op : OPS.values()) {
+            list.add(new OperationStats(op));
+        }
+        list.sort(Comparator.comparingDouble((OperationStats s) -> s.calls * s.meanMicros).reversed());
+        return list;
+    }
+
+    // newest last
+    public static List<SlowQuery> slowQueries() {
+        synchronized (SLOW_LOG) {
+            return new ArrayList<>(SLOW_LOG);
+        }
+    }
+
+    public static void reset() {
+        OPS.clear();
+        synchronized (SLOW_LOG) {
+            SLOW_LOG.clear();
+        }
+        since = Instant.now();
+    }
+
+    public static String dump() {
+        StringBuilder sb = new StringBuilder();
+        sb.append("db metrics since ").append(since).append('\n');
+        sb.append(String.format(Locale.ROOT, "%-24s %9s %7s %11s %9s %9s %9s %9s %11s%n",
+                "operation", "calls", "errors", "rows", "mean ms", "p50 ms", "p99 ms", "max ms", "wait ms"));
+        for (OperationStats s : operations()) {
+            sb.append(String.format(Locale.ROOT, "%-24s %9d %7d %11d %9.3f %9.3f %9.3f %9.3f %11.1f%n",
+                    s.name, s.calls, s.errors, s.rows, s.meanMicros / 1000, s.p50Micros / 1000,
+                    s.p99Micros / 1000, s.maxMicros / 1000, s.connectionWaitMicros / 1000));
+        }
+        List<SlowQuery> slow = slowQueries();
+        if (!slow.isEmpty()) {
+            sb.append(slow.size()).append(" slow queries (>= ").append(slowQueryThresholdMs()).append("ms), latest:\n");
+            for (SlowQuery q : slow.subList(Math.max(0, slow.size() - 5), slow.size())) {
+                sb.append(String.format(Locale.ROOT, "  %8.1fms %s %s%n", q.millis, q.operation, q.sql));
+            }
+        }
+        return sb.toString();
+    }
+
+    private static void registerMBean() {
+        try {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(new Jmx(), new ObjectName("backend:type=QueryMetrics"));
+        } catch (InstanceAlreadyExistsException e) {
+            // loaded twice (different class loader), the first one stays
+        } catch (JMException | RuntimeException e) {
+            System.out.println("could not register QueryMetrics MBean: " + e.getMessage());
+        }
+    }
+
+    private static void startDumps(long intervalSec) {
+        if (intervalSec <= 0) {
+            return;
+        }
+        ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "db-metrics-dump");
+            t.setDaemon(true);
+            return t;
+        });
+        timer.scheduleAtFixedRate(() -> System.out.print(dump()), intervalSec, intervalSec, TimeUnit.SECONDS);
+    }
+
+    // getters only, that's what JMX turns into a CompositeData
+    public static final class OperationStats {
+        private final String name;
+        private final long calls;
+        private final long errors;
+        private final long rows;
+        private final double meanMicros;
+        private final double p50Micros;
+        private final double p99Micros;
+        private final double maxMicros;
+        private final double connectionWaitMicros;
+        private final double maxConnectionWaitMicros;
+
+        private OperationStats(Op op) {
+            Histogram h = op.latency;
+            name = op.name;
+            calls = h.count();
+            errors = op.errors.sum();
+            rows = op.rows.sum();
+            meanMicros = h.mean() / 1000;
+            p50Micros = h.percentile(0.50) / 1000.0;
+            p99Micros = h.percentile(0.99) / 1000.0;
+            maxMicros = h.max() / 1000.0;
+            connectionWaitMicros = op.waitNanos.sum() / 1000.0;
+            maxConnectionWaitMicros = op.maxWaitNanos.get() / 1000.0;
+        }
+
+        public String getName() { return name; }
+        public long getCalls() { return calls; }
+        public long getErrors() { return errors; }
+        public long getRows() { return rows; }
+        public double getMeanMicros() { return meanMicros; }
+        public double getP50Micros() { return p50Micros; }
+        public double getP99Micros() { return p99Micros; }
+        public double getMaxMicros() { return maxMicros; }
+        public double getConnectionWaitMicros() { return connectionWaitMicros; }
+        public double getMaxConnectionWaitMicros() { return maxConnectionWaitMicros; }
+    }
+
+    public static final class SlowQuery {
+        private final String time;
+        private final String operation;
+        private final String sql;
+        private final String parameters;
+        private final double millis;
+
+        private SlowQuery(String time, String operation, String sql, String parameters, double millis) {
+            this.time = time;
+            this.operation = operation;
+            this.sql = sql;
+            this.parameters = parameters;
+            this.millis = millis;
+        }
+
+        public String getTime() { return time; }
+        public String getOperation() { return operation; }
+        public String getSql() { return sql; }
+        public String getParameters() { return parameters; }
+        public double getMillis() { return millis; }
+    }
+
+    private static final class Jmx implements QueryMetricsMXBean {
+        @Override public List<OperationStats> getOperations() { return operations(); }
+        @Override public List<SlowQuery> getSlowQueries() { return slowQueries(); }
+        @Override public long getSlowQueryThresholdMs() { return slowQueryThresholdMs(); }
+        @Override public void setSlowQueryThresholdMs(long ms) { QueryMetrics.setSlowQueryThresholdMs(ms); }
+        @Override public String dump() { return QueryMetrics.dump(); }
+        @Override public void reset() { QueryMetrics.reset(); }
+    }
+}
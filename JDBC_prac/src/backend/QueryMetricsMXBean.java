@@ -0,0 +1,18 @@
+package backend;
+
+import java.util.List;
+
+// what QueryMetrics shows in JConsole/VisualVM, under backend:type=QueryMetrics
+public interface QueryMetricsMXBean {
+    List<QueryMetrics.OperationStats> getOperations();
+
+    List<QueryMetrics.SlowQuery> getSlowQueries();
+
+    long getSlowQueryThresholdMs();
+
+    void setSlowQueryThresholdMs(long ms);
+
+    String dump();
+
+    void reset();
+}
@@ -0,0 +1,62 @@
+package backend;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+// Turns an open ResultSet into a lazy Stream: rows are read and mapped one at a time while the stream
+// is consumed, nothing gets collected into a list. The stream owns the connection, statement and
+// result set and releases all three on close(), so always use it in try-with-resources:
+//     try (Stream<Book> books = DBManager.streamBooks()) { books.forEach(...); }
+public class QueryStream {
+
+    public interface RowMapper<T> {
+        T map(ResultSet rs) throws SQLException;
+    }
+
+    private QueryStream() {}
+
+    // conn and pstmt must be ready to execute, from here on the stream is responsible for closing them
+    static <T> Stream<T> of(Connection conn, PreparedStatement pstmt, int fetchSize, RowMapper<T> mapper) throws SQLException {
+        ResultSet rs;
+        try {
+            pstmt.setFetchSize(fetchSize);
+            rs = pstmt.executeQuery();
+        } catch (SQLException e) {
+            closeQuietly(pstmt, conn);
+            throw e;
+        }
+
+        Spliterator<T> rows = new Spliterators.AbstractSpliterator<T>(Long.MAX_VALUE, Spliterator.ORDERED | Spliterator.NONNULL) {
+            @Override
+            public boolean tryAdvance(Consumer<? super T> action) {
+                try {
+                    if (!rs.next()) {
+                        return false;
+                    }
+                    action.accept(mapper.map(rs));
+                    return true;
+                } catch (SQLException e) {
+                    throw new RuntimeException("error reading row: " + e.getMessage(), e);
+                }
+            }
+        };
+        return StreamSupport.stream(rows, false).onClose(() -> closeQuietly(rs, pstmt, conn));
+    }
+
+    private static void closeQuietly(AutoCloseable... resources) {
+        for (AutoCloseable resource : resources) {
+            try {
+                resource.close();
+            } catch (Exception e) {
+                System.out.println("error closing stream resource: " + e.getMessage());
+            }
+        }
+    }
+}
@@ -0,0 +1,378 @@
+package backend;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.List;
+
+// Versioned schema. The version lives in PRAGMA user_version, every migration runs in its own transaction
+// together with the version bump, so a crash halfway leaves the db on the last good version.
+// To change the schema: append a new Migration with the next number, never edit one that already shipped.
+public class SchemaMigrator {
+
+    interface Step {
+        void apply(Connection conn) throws SQLException;
+    }
+
+    static final class Migration {
+        final int version;
+        final String description;
+        final Step step;
+
+        Migration(int version, String description, Step step) {
+            this.version = version;
+            this.description = description;
+            this.step = step;
+        }
+    }
+
+    // v1 is the original createTables(). IF NOT EXISTS so databases from before migrations just get adopted
+    private static final String USERS_TABLE = "CREATE TABLE IF NOT EXISTS users ("
+            + "id INTEGER PRIMARY KEY AUTOINCREMENT, "
+            + "first_name TEXT NOT NULL, "
+            + "last_name TEXT NOT NULL, "
+            + "email TEXT UNIQUE NOT NULL, "
+            + "phone TEXT);";
+
+    private static final String BOOKS_TABLE = "CREATE TABLE IF NOT EXISTS books ("
+            + "id INTEGER PRIMARY KEY AUTOINCREMENT, "
+            + "title TEXT NOT NULL, "
+            + "author TEXT NOT NULL, "
+            + "year INTEGER, "
+            + "isbn TEXT UNIQUE NOT NULL, "
+            + "available BOOLEAN DEFAULT 1);";
+
+    private static final String BORROWED_BOOKS_TABLE = "CREATE TABLE IF NOT EXISTS borrowed_books ("
+            + "id INTEGER PRIMARY KEY AUTOINCREMENT, "
+            + "user_id INTEGER NOT NULL, "
+            + "book_id INTEGER NOT NULL, "
+            + "borrow_date TEXT DEFAULT CURRENT_TIMESTAMP, "
+            + "return_date TEXT, "
+            + "FOREIGN KEY(user_id) REFERENCES users(id), "
+            + "FOREIGN KEY(book_id) REFERENCES books(id));";
+
+    // books.available is kept in sync with the open loans, so listing the catalog doesn't need
+    // a COUNT subquery per row. all loan changes go through these, whoever does the write
+    static final String[] AVAILABILITY_TRIGGERS = {
+        "CREATE TRIGGER IF NOT EXISTS borrowed_books_lend AFTER INSERT ON borrowed_books "
+            + "WHEN new.return_date IS NULL BEGIN "
+            + "UPDATE books SET available = 0 WHERE id = new.book_id; END",
+        "CREATE TRIGGER IF NOT EXISTS borrowed_books_return AFTER UPDATE OF return_date ON borrowed_books "
+            + "WHEN old.return_date IS NULL AND new.return_date IS NOT NULL BEGIN "
+            + "UPDATE books SET available = NOT EXISTS (SELECT 1 FROM borrowed_books "
+            + "WHERE book_id = new.book_id AND return_date IS NULL) WHERE id = new.book_id; END",
+        "CREATE TRIGGER IF NOT EXISTS borrowed_books_unlend AFTER DELETE ON borrowed_books "
+            + "WHEN old.return_date IS NULL BEGIN "
+            + "UPDATE books SET available = NOT EXISTS (SELECT 1 FROM borrowed_books "
+            + "WHERE book_id = old.book_id AND return_date IS NULL) WHERE id = old.book_id; END"
+    };
+
+    // recomputes books.available from the loan table, also used by DBManager.rebuildAvailability()
+    static final String REBUILD_AVAILABILITY = "UPDATE books SET available = NOT EXISTS (SELECT 1 FROM borrowed_books "
+            + "WHERE borrowed_books.book_id = books.id AND borrowed_books.return_date IS NULL)";
+
+    // closed loans older than library.archive.afterDays move here (LoanArchiver), so borrowed_books only holds
+    // open and recent loans. ids stay the original loan ids. no foreign keys, the history outlives deleted
+    // books and users. the borrow_date index serves the time range queries
+    static final String LOAN_ARCHIVE_TABLE = "CREATE TABLE IF NOT EXISTS loan_archive ("
+            + "id INTEGER PRIMARY KEY, "
+            + "user_id INTEGER NOT NULL, "
+            + "book_id INTEGER NOT NULL, "
+            + "borrow_date TEXT NOT NULL, "
+            + "return_date TEXT NOT NULL)";
+
+    static final String LOAN_ARCHIVE_INDEX = "CREATE INDEX IF NOT EXISTS idx_loan_archive_borrow_date "
+            + "ON loan_archive(borrow_date)";
+
+    // (book_id, return_date) answers "is this book lent out" straight from the index,
+    // user_id is for the users join/lookups
+    static final String[] LOAN_LOOKUP_INDEXES = {
+        "CREATE INDEX IF NOT EXISTS idx_borrowed_books_book_return ON borrowed_books(book_id, return_date)",
+        "CREATE INDEX IF NOT EXISTS idx_borrowed_books_user ON borrowed_books(user_id)"
+    };
+
+    // since v9 loan timestamps are INTEGER milliseconds since 1970 UTC (Instant.toEpochMilli), this is "now"
+    static final String NOW_MILLIS = "CAST(ROUND(unixepoch('subsec') * 1000) AS INTEGER)";
+
+    // %s = table name, so the rebuild in v9 can create it under a temporary name
+    private static final String BORROWED_BOOKS_TABLE_V9 = "CREATE TABLE %s ("
+            + "id INTEGER PRIMARY KEY AUTOINCREMENT, "
+            + "user_id INTEGER NOT NULL, "
+            + "book_id INTEGER NOT NULL, "
+            + "borrow_date INTEGER DEFAULT (" + NOW_MILLIS + "), "
+            + "return_date INTEGER, "
+            + "FOREIGN KEY(user_id) REFERENCES users(id), "
+            + "FOREIGN KEY(book_id) REFERENCES books(id))";
+
+    private static final String LOAN_ARCHIVE_TABLE_V9 = "CREATE TABLE %s ("
+            + "id INTEGER PRIMARY KEY, "
+            + "user_id INTEGER NOT NULL, "
+            + "book_id INTEGER NOT NULL, "
+            + "borrow_date INTEGER NOT NULL, "
+            + "return_date INTEGER NOT NULL)";
+
+    // date window queries on all loans, and the overdue check: open loans ordered by when they were borrowed
+    static final String[] LOAN_DATE_INDEXES = {
+        "CREATE INDEX IF NOT EXISTS idx_borrowed_books_borrow_date ON borrowed_books(borrow_date)",
+        "CREATE INDEX IF NOT EXISTS idx_borrowed_books_open_since ON borrowed_books(borrow_date) WHERE return_date IS NULL"
+    };
+
+    static final String OPEN_LOAN_INDEX = "CREATE UNIQUE INDEX IF NOT EXISTS idx_borrowed_books_open_loan "
+            + "ON borrowed_books(book_id) WHERE return_date IS NULL";
+
+    // per-table change counters for ChangeMonitor: every insert/update/delete bumps its table's row,
+    // so a poller can tell which tables moved without looking at the tables themselves
+    static final String TABLE_VERSIONS_TABLE = "CREATE TABLE IF NOT EXISTS table_versions ("
+            + "name TEXT PRIMARY KEY, "
+            + "version INTEGER NOT NULL DEFAULT 0)";
+
+    static final String[] TRACKED_TABLES = {"users", "books", "borrowed_books"};
+
+    // the three counter triggers of one table. has to be re-run whenever the table gets rebuilt
+    static String[] changeCounterTriggers(String table) {
+        String bump = "UPDATE table_versions SET version = version + 1 WHERE name = '" + table + "'; END";
+        return new String[] {
+            "CREATE TRIGGER IF NOT EXISTS " + table + "_changed_insert AFTER INSERT ON " + table + " BEGIN " + bump,
+            "CREATE TRIGGER IF NOT EXISTS " + table + "_changed_update AFTER UPDATE ON " + table + " BEGIN " + bump,
+            "CREATE TRIGGER IF NOT EXISTS " + table + "_changed_delete AFTER DELETE ON " + table + " BEGIN " + bump
+        };
+    }
+
+    // circulation statistics, kept up to date by the triggers below in the same transaction as the loan
+    // itself, so the Statistics tab reads a handful of rows instead of grouping the whole loan history.
+    // counts are over every loan ever made: archiving moves loans, it doesn't uncount them.
+    // day = days since 1970 (UTC), last_borrowed is epoch millis like the loan dates
+    static final String[] STATISTICS_TABLES = {
+        "CREATE TABLE IF NOT EXISTS book_loan_stats (book_id INTEGER PRIMARY KEY, "
+            + "loans INTEGER NOT NULL, last_borrowed INTEGER)",
+        "CREATE INDEX IF NOT EXISTS idx_book_loan_stats_loans ON book_loan_stats(loans)",
+        "CREATE TABLE IF NOT EXISTS user_loan_stats (user_id INTEGER PRIMARY KEY, "
+            + "loans INTEGER NOT NULL, last_borrowed INTEGER)",
+        "CREATE INDEX IF NOT EXISTS idx_user_loan_stats_loans ON user_loan_stats(loans)",
+        "CREATE TABLE IF NOT EXISTS daily_loan_stats (day INTEGER PRIMARY KEY, "
+            + "borrowed INTEGER NOT NULL DEFAULT 0, returned INTEGER NOT NULL DEFAULT 0)",
+        // exactly one row
+        "CREATE TABLE IF NOT EXISTS loan_totals (id INTEGER PRIMARY KEY CHECK (id = 1), "
+            + "books INTEGER NOT NULL DEFAULT 0, loans INTEGER NOT NULL DEFAULT 0, open_loans INTEGER NOT NULL DEFAULT 0)"
+    };
+
+    private static final String DAY_MILLIS = "86400000";
+
+    // a loan inserted as already returned (imports) counts its return as well.
+    // deletes only matter for open loans, LoanArchiver deletes returned ones only
+    static final String[] STATISTICS_TRIGGERS = {
+        "CREATE TRIGGER IF NOT EXISTS borrowed_books_stats_insert AFTER INSERT ON borrowed_books BEGIN "
+            + "INSERT INTO book_loan_stats (book_id, loans, last_borrowed) VALUES (new.book_id, 1, new.borrow_date) "
+            + "ON CONFLICT(book_id) DO UPDATE SET loans = loans + 1, last_borrowed = MAX(last_borrowed, excluded.last_borrowed); "
+            + "INSERT INTO user_loan_stats (user_id, loans, last_borrowed) VALUES (new.user_id, 1, new.borrow_date) "
+            + "ON CONFLICT(user_id) DO UPDATE SET loans = loans + 1, last_borrowed = MAX(last_borrowed, excluded.last_borrowed); "
+            + "INSERT INTO daily_loan_stats (day, borrowed) VALUES (COALESCE(new.borrow_date, " + NOW_MILLIS + ") / " + DAY_MILLIS + ", 1) "
+            + "ON CONFLICT(day) DO UPDATE SET borrowed = borrowed + 1; "
+            + "INSERT INTO daily_loan_stats (day, returned) SELECT new.return_date / " + DAY_MILLIS + ", 1 WHERE new.return_date IS NOT NULL "
+            + "ON CONFLICT(day) DO UPDATE SET returned = returned + 1; "
+            + "UPDATE loan_totals SET loans = loans + 1, open_loans = open_loans + (new.return_date IS NULL); END",
+        "CREATE TRIGGER IF NOT EXISTS borrowed_books_stats_return AFTER UPDATE OF return_date ON borrowed_books "
+            + "WHEN old.return_date IS NULL AND new.return_date IS NOT NULL BEGIN "
+            + "INSERT INTO daily_loan_stats (day, returned) VALUES (new.return_date / " + DAY_MILLIS + ", 1) "
+            + "ON CONFLICT(day) DO UPDATE SET returned = returned + 1; "
+            + "UPDATE loan_totals SET open_loans = open_loans - 1; END",
+        "CREATE TRIGGER IF NOT EXISTS borrowed_books_stats_delete AFTER DELETE ON borrowed_books "
+            + "WHEN old.return_date IS NULL BEGIN "
+            + "UPDATE loan_totals SET open_loans = open_loans - 1; END",
+        "CREATE TRIGGER IF NOT EXISTS books_stats_insert AFTER INSERT ON books BEGIN "
+            + "UPDATE loan_totals SET books = books + 1; END",
+        "CREATE TRIGGER IF NOT EXISTS books_stats_delete AFTER DELETE ON books BEGIN "
+            + "UPDATE loan_totals SET books = books - 1; END"
+    };
+
+    // recomputes all the statistics from the loan tables (backfill, or after writes with the triggers off).
+    // also used by DBManager.rebuildStatistics() and DataGenerator
+    private static final String ALL_LOANS = "(SELECT user_id, book_id, borrow_date, return_date FROM borrowed_books "
+            + "UNION ALL SELECT user_id, book_id, borrow_date, return_date FROM loan_archive)";
+    static final String[] REBUILD_STATISTICS = {
+        "DELETE FROM book_loan_stats",
+        "INSERT INTO book_loan_stats (book_id, loans, last_borrowed) "
+            + "SELECT book_id, COUNT(*), MAX(borrow_date) FROM " + ALL_LOANS + " GROUP BY book_id",
+        "DELETE FROM user_loan_stats",
+        "INSERT INTO user_loan_stats (user_id, loans, last_borrowed) "
+            + "SELECT user_id, COUNT(*), MAX(borrow_date) FROM " + ALL_LOANS + " GROUP BY user_id",
+        "DELETE FROM daily_loan_stats",
+        "INSERT INTO daily_loan_stats (day, borrowed, returned) SELECT day, SUM(borrowed), SUM(returned) FROM ("
+            + "SELECT borrow_date / " + DAY_MILLIS + " AS day, 1 AS borrowed, 0 AS returned FROM " + ALL_LOANS + " WHERE borrow_date IS NOT NULL "
+            + "UNION ALL SELECT return_date / " + DAY_MILLIS + ", 0, 1 FROM " + ALL_LOANS + " WHERE return_date IS NOT NULL"
+            + ") GROUP BY day",
+        "INSERT OR REPLACE INTO loan_totals (id, books, loans, open_loans) VALUES (1, "
+            + "(SELECT COUNT(*) FROM books), "
+            + "(SELECT COUNT(*) FROM borrowed_books) + (SELECT COUNT(*) FROM loan_archive), "
+            + "(SELECT COUNT(*) FROM borrowed_books WHERE return_date IS NULL))"
+    };
+
+    private static final List<Migration> MIGRATIONS = List.of(
+        new Migration(1, "base tables", conn -> exec(conn,
+            USERS_TABLE,
+            BOOKS_TABLE,
+            BORROWED_BOOKS_TABLE)),
+
+        new Migration(2, "full text search index", conn -> SearchIndex.install(conn)),
+
+        // NOCASE name indexes let LIKE 'abc%' use them
+        new Migration(3, "indexes for loan lookups and name search", conn -> {
+            exec(conn, LOAN_LOOKUP_INDEXES);
+            exec(conn,
+                "CREATE INDEX IF NOT EXISTS idx_users_first_name ON users(first_name COLLATE NOCASE)",
+                "CREATE INDEX IF NOT EXISTS idx_users_last_name ON users(last_name COLLATE NOCASE)",
+                "CREATE INDEX IF NOT EXISTS idx_books_title ON books(title COLLATE NOCASE)",
+                "CREATE INDEX IF NOT EXISTS idx_books_author ON books(author COLLATE NOCASE)");
+        }),
+
+        new Migration(4, "keep books.available in sync with open loans", conn -> {
+            exec(conn, AVAILABILITY_TRIGGERS);
+            exec(conn, REBUILD_AVAILABILITY);
+        }),
+
+        // at most one open loan per book, enforced by the db itself. books that were already lent twice
+        // (possible before this) keep their oldest open loan, the others get closed so the index can be built
+        new Migration(5, "one open loan per book", conn -> {
+            try (Statement stmt = conn.createStatement()) {
+                int closed = stmt.executeUpdate("UPDATE borrowed_books SET return_date = CURRENT_TIMESTAMP "
+                        + "WHERE return_date IS NULL AND id NOT IN "
+                        + "(SELECT MIN(id) FROM borrowed_books WHERE return_date IS NULL GROUP BY book_id)");
+                if (closed > 0) {
+                    System.out.println("closed " + closed + " duplicate open loan(s)");
+                }
+            }
+            exec(conn, OPEN_LOAN_INDEX);
+        }),
+
+        new Migration(6, "per-table change counters", conn -> {
+            exec(conn, TABLE_VERSIONS_TABLE);
+            for (String table : TRACKED_TABLES) {
+                exec(conn, "INSERT OR IGNORE INTO table_versions (name) VALUES ('" + table + "')");
+                exec(conn, changeCounterTriggers(table));
+            }
+        }),
+
+        // the UNIQUE constraint's index on email is case-sensitive, LIKE 'abc%' can only use a NOCASE one
+        new Migration(7, "email index for user lookups", conn -> exec(conn,
+            "CREATE INDEX IF NOT EXISTS idx_users_email ON users(email COLLATE NOCASE)")),
+
+        new Migration(8, "loan archive", conn -> {
+            exec(conn, LOAN_ARCHIVE_TABLE, LOAN_ARCHIVE_INDEX);
+            exec(conn, "INSERT OR IGNORE INTO table_versions (name) VALUES ('loan_archive')");
+            exec(conn, changeCounterTriggers("loan_archive"));
+        }),
+
+        // TEXT "yyyy-MM-dd HH:mm:ss" -> INTEGER epoch millis: 8 bytes instead of 19+, compared as numbers and
+        // range-scannable with the new date indexes. SQLite can't change a column's type, so both loan tables
+        // get rebuilt (create new, copy, drop old, rename) and everything that hung off them recreated
+        new Migration(9, "loan dates as epoch millis", conn -> {
+            long sequence = sequence(conn, "borrowed_books");
+            rebuild(conn, "borrowed_books", BORROWED_BOOKS_TABLE_V9);
+            exec(conn, "UPDATE sqlite_sequence SET seq = MAX(seq, " + sequence + ") WHERE name = 'borrowed_books'");
+            if (sequence > 0 && sequence(conn, "borrowed_books") == 0) {
+                // empty table, nothing was copied. archived loan ids must not come back
+                exec(conn, "INSERT INTO sqlite_sequence (name, seq) VALUES ('borrowed_books', " + sequence + ")");
+            }
+            exec(conn, AVAILABILITY_TRIGGERS);
+            exec(conn, changeCounterTriggers("borrowed_books"));
+            exec(conn, OPEN_LOAN_INDEX);
+            exec(conn, LOAN_LOOKUP_INDEXES);
+            exec(conn, LOAN_DATE_INDEXES);
+
+            rebuild(conn, "loan_archive", LOAN_ARCHIVE_TABLE_V9);
+            exec(conn, LOAN_ARCHIVE_INDEX);
+            exec(conn, changeCounterTriggers("loan_archive"));
+        }),
+
+        // backfilled from the whole history once here, the triggers keep them current from then on
+        new Migration(10, "circulation statistics", conn -> {
+            exec(conn, STATISTICS_TABLES);
+            exec(conn, REBUILD_STATISTICS);
+            exec(conn, STATISTICS_TRIGGERS);
+        })
+    );
+
+    private SchemaMigrator() {}
+
+    public static int latestVersion() {
+        return MIGRATIONS.get(MIGRATIONS.size() - 1).version;
+    }
+
+    public static int currentVersion(Connection conn) throws SQLException {
+        try (Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery("PRAGMA user_version")) {
+            return rs.next() ? rs.getInt(1) : 0;
+        }
+    }
+
+    // brings the db up to latestVersion(). stops at the first failing migration, everything before it stays applied
+    public static void migrate(Connection conn) throws SQLException {
+        int current = currentVersion(conn);
+        if (current > latestVersion()) {
+            System.out.println("database schema v" + current + " is newer than this app (v" + latestVersion() + ")");
+            return;
+        }
+
+        boolean applied = false;
+        for (Migration m : MIGRATIONS) {
+            if (m.version <= current) {
+                continue;
+            }
+            boolean autoCommit = conn.getAutoCommit();
+            conn.setAutoCommit(false);
+            try {
+                m.step.apply(conn);
+                exec(conn, "PRAGMA user_version = " + m.version);
+                conn.commit();
+                applied = true;
+                System.out.println("migrated schema to v" + m.version + " (" + m.description + ")");
+            } catch (SQLException e) {
+                conn.rollback();
+                throw new SQLException("migration to v" + m.version + " failed: " + e.getMessage(), e);
+            } finally {
+                conn.setAutoCommit(autoCommit);
+            }
+        }
+
+        if (applied) {
+            // refresh planner statistics so the new indexes actually get picked
+            exec(conn, "PRAGMA optimize");
+        }
+    }
+
+    // copies table into a new one made from createSql (with the dates converted) and swaps it in.
+    // indexes and triggers go away with the old table, the caller recreates them
+    private static void rebuild(Connection conn, String table, String createSql) throws SQLException {
+        String temp = table + "_rebuild";
+        exec(conn,
+            String.format(createSql, temp),
+            "INSERT INTO " + temp + " (id, user_id, book_id, borrow_date, return_date) "
+                + "SELECT id, user_id, book_id, " + textToMillis("borrow_date") + ", " + textToMillis("return_date")
+                + " FROM " + table,
+            "DROP TABLE " + table,
+            "ALTER TABLE " + temp + " RENAME TO " + table);
+    }
+
+    // NULL stays NULL. a value that's already a number (written by something newer than v9) is left alone
+    private static String textToMillis(String column) {
+        return "CASE WHEN typeof(" + column + ") = 'text' THEN CAST(ROUND(unixepoch(" + column + ", 'subsec') * 1000) AS INTEGER) "
+                + "ELSE " + column + " END";
+    }
+
+    // AUTOINCREMENT high-water mark of a table, 0 if it has none yet
+    private static long sequence(Connection conn, String table) throws SQLException {
+        try (Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT seq FROM sqlite_sequence WHERE name = '" + table + "'")) {
+            return rs.next() ? rs.getLong(1) : 0;
+        }
+    }
+
+    static void exec(Connection conn, String... sql) throws SQLException {
+        try (Statement stmt = conn.createStatement()) {
+            for (String s : sql) {
+                stmt.execute(s);
+            }
+        }
+    }
+}
@@ -0,0 +1,135 @@
+package backend;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+
+// FTS5 full text index over books (title, author, isbn) and users (first_name, last_name, email).
+// Both are external content tables, the real rows stay in books/users and triggers keep the index in sync.
+// If the SQLite build has no FTS5 install() just returns false and DBManager keeps using the old LIKE search.
+// That is checked before any DDL runs. Any other error is thrown, so the migration rolls back and runs again.
+public class SearchIndex {
+    private static final int MIN_RANKED_PREFIX = 3; // see worthRanking
+    private static volatile Boolean available;
+
+    private static final String[] DDL = {
+        "CREATE VIRTUAL TABLE IF NOT EXISTS books_fts USING fts5("
+            + "title, author, isbn, content='books', content_rowid='id', prefix='2 3')",
+        "CREATE TRIGGER IF NOT EXISTS books_fts_ai AFTER INSERT ON books BEGIN "
+            + "INSERT INTO books_fts(rowid, title, author, isbn) VALUES (new.id, new.title, new.author, new.isbn); END",
+        "CREATE TRIGGER IF NOT EXISTS books_fts_ad AFTER DELETE ON books BEGIN "
+            + "INSERT INTO books_fts(books_fts, rowid, title, author, isbn) VALUES ('delete', old.id, old.title, old.author, old.isbn); END",
+        // only the indexed columns, so flipping books.available doesn't touch the index
+        "CREATE TRIGGER IF NOT EXISTS books_fts_au AFTER UPDATE OF title, author, isbn ON books BEGIN "
+            + "INSERT INTO books_fts(books_fts, rowid, title, author, isbn) VALUES ('delete', old.id, old.title, old.author, old.isbn); "
+            + "INSERT INTO books_fts(rowid, title, author, isbn) VALUES (new.id, new.title, new.author, new.isbn); END",
+
+        "CREATE VIRTUAL TABLE IF NOT EXISTS users_fts USING fts5("
+            + "first_name, last_name, email, content='users', content_rowid='id', prefix='2 3')",
+        "CREATE TRIGGER IF NOT EXISTS users_fts_ai AFTER INSERT ON users BEGIN "
+            + "INSERT INTO users_fts(rowid, first_name, last_name, email) VALUES (new.id, new.first_name, new.last_name, new.email); END",
+        "CREATE TRIGGER IF NOT EXISTS users_fts_ad AFTER DELETE ON users BEGIN "
+            + "INSERT INTO users_fts(users_fts, rowid, first_name, last_name, email) VALUES ('delete', old.id, old.first_name, old.last_name, old.email); END",
+        "CREATE TRIGGER IF NOT EXISTS users_fts_au AFTER UPDATE OF first_name, last_name, email ON users BEGIN "
+            + "INSERT INTO users_fts(users_fts, rowid, first_name, last_name, email) VALUES ('delete', old.id, old.first_name, old.last_name, old.email); "
+            + "INSERT INTO users_fts(rowid, first_name, last_name, email) VALUES (new.id, new.first_name, new.last_name, new.email); END"
+    };
+
+    private SearchIndex() {}
+
+    // creates the index + triggers if missing. a freshly created index gets filled from the existing rows,
+    // so old databases are indexed on first run. needs the books and users tables to exist already.
+    // false (and nothing created) when there is no FTS5
+    public static boolean install(Connection conn) throws SQLException {
+        if (!hasFts5(conn)) {
+            available = false;
+            return false;
+        }
+        boolean fresh = !tableExists(conn, "books_fts") || !tableExists(conn, "users_fts");
+        try (Statement stmt = conn.createStatement()) {
+            for (String ddl : DDL) {
+                stmt.execute(ddl);
+            }
+            if (fresh) {
+                stmt.execute("INSERT INTO books_fts(books_fts) VALUES ('rebuild')");
+                stmt.execute("INSERT INTO users_fts(users_fts) VALUES ('rebuild')");
+                System.out.println("search index built");
+            }
+        } catch (SQLException e) {
+            available = null; // whatever got created is rolled back with the migration, look again next time
+            throw e;
+        }
+        available = true;
+        return true;
+    }
+
+    // creates and drops a throwaway FTS5 table in the temp schema, only "no such module" means there is none
+    private static boolean hasFts5(Connection conn) throws SQLException {
+        try (Statement stmt = conn.createStatement()) {
+            try {
+                stmt.execute("CREATE VIRTUAL TABLE temp.fts5_probe USING fts5(x)");
+            } catch (SQLException e) {
+                if (e.getMessage() != null && e.getMessage().contains("no such module")) {
+                    System.out.println("full text search not available, falling back to LIKE: " + e.getMessage());
+                    return false;
+                }
+                throw e;
+            }
+            stmt.execute("DROP TABLE temp.fts5_probe");
+            return true;
+        }
+    }
+
+    // true once the index tables exist. checked once per run, install() updates it
+    public static boolean isAvailable(Connection conn) {
+        Boolean known = available;
+        if (known == null) {
+            try {
+                known = tableExists(conn, "books_fts") && tableExists(conn, "users_fts");
+            } catch (SQLException e) {
+                known = false;
+            }
+            available = known;
+        }
+        return known;
+    }
+
+    // turns whatever the user typed into an FTS5 query: every word becomes a quoted prefix term,
+    // all of them have to match. returns null if nothing searchable is left
+    public static String toMatchQuery(String keyword) {
+        if (keyword == null) {
+            return null;
+        }
+        List<String> terms = new ArrayList<>();
+        for (String token : keyword.split("[^\\p{L}\\p{N}]+")) {
+            if (!token.isEmpty()) {
+                terms.add("\"" + token + "\"*");
+            }
+        }
+        return terms.isEmpty() ? null : String.join(" ", terms);
+    }
+
+    // ranking scores every match before LIMIT applies, and a one or two letter prefix matches most rows.
+    // those get the first matches in id order instead, which FTS5 can stop reading after LIMIT
+    public static boolean worthRanking(String keyword) {
+        for (String token : keyword.split("[^\\p{L}\\p{N}]+")) {
+            if (token.length() >= MIN_RANKED_PREFIX) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean tableExists(Connection conn, String name) throws SQLException {
+        try (PreparedStatement pstmt = conn.prepareStatement("SELECT 1 FROM sqlite_master WHERE type = 'table' AND name = ?")) {
+            pstmt.setString(1, name);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                return rs.next();
+            }
+        }
+    }
+}
@@ -0,0 +1,239 @@
+package backend;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Per-connection LRU cache of PreparedStatements keyed by the SQL text. Every pooled connection has one,
+// so conn.prepareStatement(sql) only parses/plans the first time and later calls just rebind and execute.
+// The statements handed out are proxies: close() resets them (params cleared, open ResultSet closed)
+// and keeps them in the cache. Only eviction or closing the connection really closes them.
+// The proxies also remember the bound parameters and time every execute (until the next execute/rebind/close,
+// so reading the rows counts too) for the QueryMetrics slow query log. One-off statements aren't timed.
+public class StatementCache {
+    private static final AtomicLong HITS = new AtomicLong();
+    private static final AtomicLong MISSES = new AtomicLong();
+    private static final AtomicLong EVICTIONS = new AtomicLong();
+
+    private final Connection raw;
+    private final int maxSize;
+    private final LinkedHashMap<String, Entry> entries;
+
+    StatementCache(Connection raw, int maxSize) {
+        this.raw = raw;
+        this.maxSize = maxSize;
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                if (size() <= StatementCache.this.maxSize) {
+                    return false;
+                }
+                EVICTIONS.incrementAndGet();
+                eldest.getValue().evict();
+                return true;
+            }
+        };
+    }
+
+    // a pooled connection is only ever used by one thread at a time, so no locking in here
+    PreparedStatement prepare(String sql) throws SQLException {
+        if (maxSize <= 0) {
+            MISSES.incrementAndGet();
+            return raw.prepareStatement(sql);
+        }
+        Entry entry = entries.get(sql);
+        if (entry != null && !entry.inUse) {
+            HITS.incrementAndGet();
+            return entry.checkout();
+        }
+        MISSES.incrementAndGet();
+        PreparedStatement stmt = raw.prepareStatement(sql);
+        if (entry != null) {
+            // same SQL still open further up the stack (nested loop etc.), give out a plain one-off statement
+            return stmt;
+        }
+        entry = new Entry(sql, stmt);
+        entries.put(sql, entry);
+        return entry.checkout();
+    }
+
+    void closeAll() {
+        for (Iterator<Entry> it = entries.values().iterator(); it.hasNext(); ) {
+            it.next().evict();
+            it.remove();
+        }
+    }
+
+    public static long hits() { return HITS.get(); }
+    public static long misses() { return MISSES.get(); }
+    public static long evictions() { return EVICTIONS.get(); }
+
+    public static double hitRatio() {
+        long hits = HITS.get();
+        long total = hits + MISSES.get();
+        return total == 0 ? 0 : (double) hits / total;
+    }
+
+    public static String stats() {
+        return String.format("statement cache: %d hits, %d misses, %d evictions (%.1f%% hit ratio)",
+                hits(), misses(), evictions(), hitRatio() * 100);
+    }
+
+    public static void resetStats() {
+        HITS.set(0);
+        MISSES.set(0);
+        EVICTIONS.set(0);
+    }
+
+    private static final class Entry {
+        final String sql;
+        final PreparedStatement stmt;
+        final List<ResultSet> openResults = new ArrayList<>();
+        boolean inUse;
+        boolean evicted;
+        // for QueryMetrics
+        Object[] params = new Object[4];
+        int paramCount;
+        int batched;
+        int executedBatch;
+        long executeStart;
+
+        Entry(String sql, PreparedStatement stmt) {
+            this.sql = sql;
+            this.stmt = stmt;
+        }
+
+        void bind(int index, Object value) {
+            finishExecute(); // rebinding means the last execute is done with
+            if (index > params.length) {
+                params = Arrays.copyOf(params, Math.max(index, params.length * 2));
+            }
+            params[index - 1] = value;
+            paramCount = Math.max(paramCount, index);
+        }
+
+        void startExecute(boolean batch) {
+            finishExecute();
+            executedBatch = batch ? batched : 0;
+            batched = 0;
+            executeStart = System.nanoTime();
+        }
+
+        void finishExecute() {
+            if (executeStart != 0) {
+                long nanos = System.nanoTime() - executeStart;
+                executeStart = 0;
+                if (QueryMetrics.isSlow(nanos)) {
+                    QueryMetrics.slowQuery(sql, Arrays.copyOf(params, paramCount), executedBatch, nanos);
+                }
+            }
+        }
+
+        PreparedStatement checkout() {
+            inUse = true;
+            return (PreparedStatement) Proxy.newProxyInstance(PreparedStatement.class.getClassLoader(),
+                    new Class<?>[]{PreparedStatement.class}, new Handle(this));
+        }
+
+        // logical close: reset for the next caller
+        void checkin() throws SQLException {
+            inUse = false;
+            finishExecute();
+            Arrays.fill(params, 0, paramCount, null);
+            paramCount = 0;
+            batched = 0;
+            try {
+                for (ResultSet rs : openResults) {
+                    rs.close();
+                }
+                openResults.clear();
+                stmt.clearParameters();
+            } finally {
+                if (evicted) {
+                    stmt.close();
+                }
+            }
+        }
+
+        void evict() {
+            evicted = true;
+            if (!inUse) {
+                try {
+                    stmt.close();
+                } catch (SQLException e) {
+                    System.out.println("error closing cached statement: " + e.getMessage());
+                }
+            }
+        }
+    }
+
+    // one per checkout, like the connection handles in ConnectionPool
+    private static final class Handle implements InvocationHandler {
+        private Entry entry;
+
+        Handle(Entry entry) {
+            this.entry = entry;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "close":
+                    if (entry != null) {
+                        Entry owner = entry;
+                        entry = null;
+                        owner.checkin();
+                    }
+                    return null;
+                case "isClosed":
+                    return entry == null;
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                default:
+                    break;
+            }
+            if (entry == null) {
+                throw new SQLException("statement is closed");
+            }
+            if (QueryMetrics.enabled()) {
+                track(method.getName(), args);
+            }
+            try {
+                Object result = method.invoke(entry.stmt, args);
+                if (result instanceof ResultSet rs) {
+                    entry.openResults.add(rs);
+                }
+                return result;
+            } catch (InvocationTargetException e) {
+                if (e.getCause() instanceof SQLException) {
+                    QueryMetrics.error();
+                }
+                throw e.getCause();
+            }
+        }
+
+        private void track(String name, Object[] args) {
+            if (name.startsWith("execute")) {
+                entry.startExecute(name.equals("executeBatch") || name.equals("executeLargeBatch"));
+            } else if (name.equals("addBatch")) {
+                entry.batched++;
+            } else if (name.startsWith("set") && args != null && args.length >= 2 && args[0] instanceof Integer index && index > 0) {
+                entry.bind(index, name.equals("setNull") ? null : args[1]);
+            }
+        }
+    }
+}
@@ -0,0 +1,463 @@
+package bench;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+import backend.BorrowResult;
+import backend.DBManager;
+import backend.DataGenerator;
+import backend.Histogram;
+
+// Benchmarks for the DBManager data-access layer. No JMH here (there's no build to pull it in), so this is
+// a small harness with the same idea: per scale it builds (once) a deterministic synthetic database,
+// then runs every operation for a warmup period and a measured period, single-threaded and with more
+// threads fighting over the pools, and records throughput plus a latency histogram.
+// Results go to stdout and to a JSON file, run it on two commits and diff the files.
+// Write cases clean up after themselves: a setup step creates the row an update/delete works on and a
+// teardown step removes what the op added or lent, neither of them is timed. Not benchmarked: the lifecycle
+// calls (connect, shutdown, createTables, populateDatabase), borrowBook (just tryBorrow plus a message),
+// the maintenance jobs (rebuildAvailability, rebuildStatistics, findAvailabilityMismatches, which rewrite or
+// scan whole tables) and the cache/monitor accessors that don't touch the database.
+//
+// usage: java bench.Benchmark [--scales 10k,1m,10m] [--threads 1,8] [--warmup 2] [--time 5]
+//                             [--ops searchBooks,borrowReturn,...] [--seed 42] [--max-full-scan 100000]
+//                             [--cache] [--out file.json]
+// --max-full-scan: the cases that read a whole table (getAllBooks, streamUsers...) are skipped on scales
+// with more books than this
+// fixtures live in database/bench-<scale>.db and are reused; every scale runs on a fresh copy of it
+public class Benchmark {
+    private static final int SEARCH_LIMIT = 500; // same page size as the GUI searches
+
+    private interface Op {
+        void run(Random rnd, Context ctx);
+    }
+
+    // setup, op and teardown of a write case share one Fixture per thread
+    private interface Step {
+        void run(Random rnd, Context ctx, Fixture f);
+    }
+
+    private static final class Fixture {
+        int id;
+        boolean undo;
+    }
+
+    private static final Step NOTHING = (rnd, ctx, f) -> { };
+
+    private static final class Case {
+        final String name;
+        final boolean fullScan; // reads the whole table into memory, skipped above --max-full-scan rows
+        final Step setup;
+        final Step op;
+        final Step teardown;
+
+        Case(String name, boolean fullScan, Op op) {
+            this(name, fullScan, NOTHING, (rnd, ctx, f) -> op.run(rnd, ctx), NOTHING);
+        }
+
+        Case(String name, Step setup, Step op, Step teardown) {
+            this(name, false, setup, op, teardown);
+        }
+
+        private Case(String name, boolean fullScan, Step setup, Step op, Step teardown) {
+            this.name = name;
+            this.fullScan = fullScan;
+            this.setup = setup;
+            this.op = op;
+            this.teardown = teardown;
+        }
+    }
+
+    private static final class Context {
+        final int books;
+        final int users;
+        final long historyFrom; // epoch millis the fixture's loan history starts at
+        final long historyTo;
+        final AtomicLong added = new AtomicLong();
+
+        Context(DataGenerator.Options fixture) {
+            this.books = fixture.books;
+            this.users = fixture.users;
+            this.historyTo = fixture.end.atStartOfDay(ZoneOffset.UTC).toInstant().toEpochMilli();
+            this.historyFrom = fixture.end.minusYears(fixture.years).atStartOfDay(ZoneOffset.UTC).toInstant().toEpochMilli();
+        }
+
+        Instant randomDay(Random rnd) {
+            return Instant.ofEpochMilli(historyFrom + (long) (rnd.nextDouble() * (historyTo - historyFrom)));
+        }
+    }
+
+    private static final List<Case> CASES = List.of(
+        // books
+        new Case("getBook", false, (rnd, ctx) -> DBManager.getBook(1 + rnd.nextInt(ctx.books))),
+        new Case("getBooksPage", false, (rnd, ctx) -> DBManager.getBooksPage(rnd.nextInt(ctx.books), 200)),
+        new Case("countBooks", false, (rnd, ctx) -> DBManager.countBooks()),
+        new Case("countBooksUpTo", false, (rnd, ctx) -> DBManager.countBooksUpTo(rnd.nextInt(ctx.books))),
+        new Case("findBookIdAfter", false, (rnd, ctx) -> DBManager.findBookIdAfter(rnd.nextInt(ctx.books), 200)),
+        new Case("searchBooks", false, (rnd, ctx) -> DBManager.searchBooks(DataGenerator.titleWord(rnd), 0, SEARCH_LIMIT)),
+        new Case("getAllBooks", true, (rnd, ctx) -> DBManager.getAllBooks()),
+        new Case("streamBooks", true, (rnd, ctx) -> drain(DBManager.streamBooks())),
+
+        // users
+        new Case("getUser", false, (rnd, ctx) -> DBManager.getUser(1 + rnd.nextInt(ctx.users))),
+        new Case("getUsersPage", false, (rnd, ctx) -> DBManager.getUsersPage(rnd.nextInt(ctx.users), 200)),
+        new Case("countUsers", false, (rnd, ctx) -> DBManager.countUsers()),
+        new Case("countUsersUpTo", false, (rnd, ctx) -> DBManager.countUsersUpTo(rnd.nextInt(ctx.users))),
+        new Case("findUserIdAfter", false, (rnd, ctx) -> DBManager.findUserIdAfter(rnd.nextInt(ctx.users), 200)),
+        new Case("searchUsers", false, (rnd, ctx) -> DBManager.searchUsers(DataGenerator.lastName(rnd).substring(0, 4), 0, SEARCH_LIMIT)),
+        new Case("lookupUsers", false, (rnd, ctx) -> DBManager.lookupUsers(DataGenerator.lastName(rnd).substring(0, 3), 20)),
+        new Case("getAllUsers", true, (rnd, ctx) -> DBManager.getAllUsers()),
+        new Case("streamUsers", true, (rnd, ctx) -> drain(DBManager.streamUsers())),
+
+        // loans
+        new Case("getBorrowedBooksPage", false, (rnd, ctx) -> DBManager.getBorrowedBooksPage(rnd.nextInt(ctx.books), 200)),
+        new Case("countBorrowedBooks", false, (rnd, ctx) -> DBManager.countBorrowedBooks()),
+        new Case("countBorrowedBooksUpTo", false, (rnd, ctx) -> DBManager.countBorrowedBooksUpTo(rnd.nextInt(ctx.books))),
+        new Case("findLoanIdAfter", false, (rnd, ctx) -> DBManager.findLoanIdAfter(rnd.nextInt(ctx.books), 200)),
+        new Case("getActiveLoansPage", false, (rnd, ctx) -> DBManager.getActiveLoansPage(rnd.nextInt(ctx.books), 200)),
+        new Case("countActiveLoans", false, (rnd, ctx) -> DBManager.countActiveLoans()),
+        new Case("countActiveLoansUpTo", false, (rnd, ctx) -> DBManager.countActiveLoansUpTo(rnd.nextInt(ctx.books))),
+        new Case("findActiveLoanBookIdAfter", false, (rnd, ctx) -> DBManager.findActiveLoanBookIdAfter(rnd.nextInt(ctx.books), 200)),
+        new Case("getLoanHistoryPage", false, (rnd, ctx) -> DBManager.getLoanHistoryPage(rnd.nextInt(ctx.books), 200)),
+        new Case("countLoanHistory", false, (rnd, ctx) -> DBManager.countLoanHistory()),
+        new Case("countLoanHistoryUpTo", false, (rnd, ctx) -> DBManager.countLoanHistoryUpTo(rnd.nextInt(ctx.books))),
+        new Case("findHistoryLoanIdAfter", false, (rnd, ctx) -> DBManager.findHistoryLoanIdAfter(rnd.nextInt(ctx.books), 200)),
+        new Case("getLoansBorrowedBetween", false, (rnd, ctx) -> {
+            Instant from = ctx.randomDay(rnd);
+            DBManager.getLoansBorrowedBetween(from, from.plusSeconds(7 * 86_400), 200);
+        }),
+        new Case("getOverdueLoans", false, (rnd, ctx) -> DBManager.getOverdueLoans(200)),
+        new Case("countOverdueLoans", false, (rnd, ctx) -> DBManager.countOverdueLoans()),
+        new Case("getActiveLoans", true, (rnd, ctx) -> DBManager.getActiveLoans()),
+        new Case("getBorrowedBooks", true, (rnd, ctx) -> DBManager.getBorrowedBooks()),
+        new Case("streamBorrowedBooks", true, (rnd, ctx) -> drain(DBManager.streamBorrowedBooks())),
+
+        // statistics
+        new Case("getCirculationStats", false, (rnd, ctx) -> DBManager.getCirculationStats()),
+        new Case("getMostBorrowedBooks", false, (rnd, ctx) -> DBManager.getMostBorrowedBooks(20)),
+        new Case("getMostActiveUsers", false, (rnd, ctx) -> DBManager.getMostActiveUsers(20)),
+        new Case("getDailyLoans", false, (rnd, ctx) -> {
+            LocalDate to = LocalDate.ofInstant(ctx.randomDay(rnd), ZoneOffset.UTC);
+            DBManager.getDailyLoans(to.minusDays(29), to);
+        }),
+
+        // writes
+        new Case("tryBorrow", (rnd, ctx, f) -> f.id = 1 + rnd.nextInt(ctx.books),
+                (rnd, ctx, f) -> f.undo = DBManager.tryBorrow(f.id, 1 + rnd.nextInt(ctx.users)) == BorrowResult.BORROWED,
+                (rnd, ctx, f) -> {
+                    if (f.undo) {
+                        DBManager.returnBook(f.id);
+                    }
+                }),
+        new Case("borrowReturn", false, (rnd, ctx) -> {
+            int bookId = 1 + rnd.nextInt(ctx.books);
+            if (DBManager.tryBorrow(bookId, 1 + rnd.nextInt(ctx.users)) == BorrowResult.BORROWED) {
+                DBManager.returnBook(bookId);
+            }
+        }),
+        new Case("addBook", NOTHING,
+                (rnd, ctx, f) -> DBManager.addBook("Bench " + DataGenerator.titleWord(rnd), "Bench Author", 2000, benchIsbn(ctx, f)),
+                (rnd, ctx, f) -> DBManager.deleteBook(benchBookId(f))),
+        new Case("updateBook", Benchmark::addBenchBook,
+                (rnd, ctx, f) -> DBManager.updateBook(f.id, "Bench " + DataGenerator.titleWord(rnd), "Bench Author", 2001, "bench-" + f.id),
+                (rnd, ctx, f) -> DBManager.deleteBook(f.id)),
+        new Case("deleteBook", Benchmark::addBenchBook, (rnd, ctx, f) -> DBManager.deleteBook(f.id), NOTHING),
+        new Case("addUser", NOTHING,
+                (rnd, ctx, f) -> DBManager.addUser("Bench", DataGenerator.lastName(rnd), benchEmail(ctx, f), null),
+                (rnd, ctx, f) -> DBManager.deleteUser(benchUserId(f))),
+        new Case("updateUser", Benchmark::addBenchUser,
+                (rnd, ctx, f) -> DBManager.updateUser(f.id, "Bench", DataGenerator.lastName(rnd), "bench-" + f.id + "@example.com", "0"),
+                (rnd, ctx, f) -> DBManager.deleteUser(f.id)),
+        new Case("deleteUser", Benchmark::addBenchUser, (rnd, ctx, f) -> DBManager.deleteUser(f.id), NOTHING)
+    );
+
+    private static final class Result {
+        String scale;
+        String op;
+        int threads;
+        long ops;
+        double seconds;
+        Histogram latency;
+    }
+
+    public static void main(String[] args) throws Exception {
+        List<String> scales = List.of("10k");
+        int[] threadCounts = {1, 8};
+        int warmupSec = 2;
+        int timeSec = 5;
+        long seed = 42;
+        int maxFullScan = 100_000;
+        boolean cache = false;
+        List<String> only = null;
+        Path out = null;
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--scales" -> scales = List.of(args[++i].split(","));
+                case "--threads" -> threadCounts = Arrays.stream(args[++i].split(",")).mapToInt(Integer::parseInt).toArray();
+                case "--warmup" -> warmupSec = Integer.parseInt(args[++i]);
+                case "--time" -> timeSec = Integer.parseInt(args[++i]);
+                case "--ops" -> only = List.of(args[++i].split(","));
+                case "--seed" -> seed = Long.parseLong(args[++i]);
+                case "--max-full-scan" -> maxFullScan = Integer.parseInt(args[++i]);
+                case "--cache" -> cache = true;
+                case "--out" -> out = Path.of(args[++i]);
+                default -> {
+                    System.out.println("unknown option " + args[i]);
+                    return;
+                }
+            }
+        }
+        if (out == null) {
+            out = Path.of("database", "bench-" + System.currentTimeMillis() + ".json");
+        }
+        // measure SQLite, not the CatalogCache, unless asked to. has to be set before DBManager loads
+        System.setProperty("library.cache.enabled", String.valueOf(cache));
+
+        List<Result> results = new ArrayList<>();
+        for (String scale : scales) {
+            int books = (int) DataGenerator.parseCount(scale);
+            DataGenerator.Options fixture = fixture(books, seed);
+            Path template = Path.of("database", "bench-" + scale + ".db");
+            Path work = Path.of("database", "bench-run.db");
+            prepare(fixture, template);
+            DBManager.shutdown();
+            deleteDb(work);
+            Files.copy(template, work, StandardCopyOption.REPLACE_EXISTING);
+            System.setProperty("library.db.url", "jdbc:sqlite:" + work);
+            DBManager.clearCache();
+
+            Context ctx = new Context(fixture);
+            for (Case c : CASES) {
+                if (only != null && !only.contains(c.name)) {
+                    continue;
+                }
+                if (c.fullScan && books > maxFullScan) {
+                    System.out.printf("%-6s %-22s skipped, full table read above %,d rows%n", scale, c.name, maxFullScan);
+                    continue;
+                }
+                for (int threads : threadCounts) {
+                    run(c, ctx, threads, warmupSec, seed);
+                    Result r = run(c, ctx, threads, timeSec, seed + 1);
+                    r.scale = scale;
+                    results.add(r);
+                    print(r);
+                }
+            }
+            DBManager.shutdown();
+        }
+        writeJson(out, results, warmupSec, timeSec, seed, cache);
+        System.out.println("results written to " + out);
+    }
+
+    // runs the op on `threads` threads for `seconds`, each thread with its own seeded Random
+    private static Result run(Case c, Context ctx, int threads, int seconds, long seed) throws InterruptedException {
+        Histogram[] histograms = new Histogram[threads];
+        long[] counts = new long[threads];
+        CountDownLatch start = new CountDownLatch(1);
+        long[] window = new long[2];
+        List<Thread> workers = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            int index = t;
+            histograms[t] = new Histogram();
+            Random rnd = new Random(seed * 31 + t);
+            Fixture fixture = new Fixture();
+            Thread worker = new Thread(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                long end = window[1];
+                while (System.nanoTime() < end) {
+                    c.setup.run(rnd, ctx, fixture);
+                    long now = System.nanoTime();
+                    c.op.run(rnd, ctx, fixture);
+                    histograms[index].record(System.nanoTime() - now);
+                    counts[index]++;
+                    c.teardown.run(rnd, ctx, fixture);
+                    fixture.undo = false;
+                }
+            }, "bench-" + c.name + "-" + t);
+            workers.add(worker);
+            worker.start();
+        }
+        window[0] = System.nanoTime();
+        window[1] = window[0] + seconds * 1_000_000_000L;
+        start.countDown();
+        for (Thread worker : workers) {
+            worker.join();
+        }
+
+        Result r = new Result();
+        r.op = c.name;
+        r.threads = threads;
+        r.seconds = (System.nanoTime() - window[0]) / 1e9;
+        r.latency = new Histogram();
+        for (int t = 0; t < threads; t++) {
+            r.latency.add(histograms[t]);
+            r.ops += counts[t];
+        }
+        return r;
+    }
+
+    private static <T> void drain(Stream<T> rows) {
+        try (rows) {
+            rows.forEach(row -> { });
+        }
+    }
+
+    // rows the write cases create get a unique isbn/email, the id is looked up untimed afterwards
+    private static String benchIsbn(Context ctx, Fixture f) {
+        f.id = (int) ctx.added.incrementAndGet();
+        return "bench-run-" + f.id;
+    }
+
+    private static String benchEmail(Context ctx, Fixture f) {
+        f.id = (int) ctx.added.incrementAndGet();
+        return "bench-run-" + f.id + "@example.com";
+    }
+
+    private static int benchBookId(Fixture f) {
+        return idOf("SELECT id FROM books WHERE isbn = ?", "bench-run-" + f.id);
+    }
+
+    private static int benchUserId(Fixture f) {
+        return idOf("SELECT id FROM users WHERE email = ?", "bench-run-" + f.id + "@example.com");
+    }
+
+    private static void addBenchBook(Random rnd, Context ctx, Fixture f) {
+        DBManager.addBook("Bench " + DataGenerator.titleWord(rnd), "Bench Author", 2000, benchIsbn(ctx, f));
+        f.id = benchBookId(f);
+    }
+
+    private static void addBenchUser(Random rnd, Context ctx, Fixture f) {
+        DBManager.addUser("Bench", DataGenerator.lastName(rnd), benchEmail(ctx, f), null);
+        f.id = benchUserId(f);
+    }
+
+    private static int idOf(String sql, String key) {
+        try (Connection conn = DBManager.connect();
+             PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            pstmt.setString(1, key);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                return rs.next() ? rs.getInt(1) : -1;
+            }
+        } catch (SQLException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    // `books` is the scale, plus books/10 users and one loan per book in the history, 5% of the books
+    // are lent out. fixed end date, so the same seed gives the same rows on every run
+    private static DataGenerator.Options fixture(int books, long seed) {
+        DataGenerator.Options o = new DataGenerator.Options();
+        o.seed = seed;
+        o.books = books;
+        o.users = Math.max(100, books / 10);
+        o.loans = books;
+        o.openShare = 0.05;
+        o.years = 3;
+        o.end = LocalDate.of(2025, 1, 1);
+        return o;
+    }
+
+    private static void prepare(DataGenerator.Options fixture, Path template) throws Exception {
+        String url = "jdbc:sqlite:" + template;
+        if (Files.exists(template) && matches(fixture, url)) {
+            return;
+        }
+        System.out.println("building " + template + " ...");
+        DBManager.shutdown();
+        deleteDb(template);
+        System.setProperty("library.db.url", url);
+        System.out.println("fixture: " + new DataGenerator(fixture).generate());
+        DBManager.shutdown();
+    }
+
+    // true if the file at url already holds this fixture
+    private static boolean matches(DataGenerator.Options fixture, String url) {
+        try (Connection conn = DriverManager.getConnection(url);
+             Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT (SELECT COUNT(*) FROM books), (SELECT COUNT(*) FROM users)")) {
+            return rs.next() && rs.getInt(1) == fixture.books && rs.getInt(2) == fixture.users;
+        } catch (SQLException e) {
+            return false;
+        }
+    }
+
+    private static void deleteDb(Path db) throws IOException {
+        Files.deleteIfExists(db);
+        Files.deleteIfExists(Path.of(db + "-wal"));
+        Files.deleteIfExists(Path.of(db + "-shm"));
+    }
+
+    private static void print(Result r) {
+        System.out.printf(Locale.ROOT, "%-6s %-22s %2d thr %,12.1f ops/s   p50 %9s  p99 %9s  max %9s%n",
+                r.scale, r.op, r.threads, r.ops / r.seconds,
+                micros(r.latency.percentile(0.50)), micros(r.latency.percentile(0.99)), micros(r.latency.max()));
+    }
+
+    private static String micros(long nanos) {
+        return String.format(Locale.ROOT, "%.1fus", nanos / 1000.0);
+    }
+
+    // hand-written, the format is flat enough that pulling in a JSON library isn't worth it
+    private static void writeJson(Path out, List<Result> results, int warmupSec, int timeSec, long seed, boolean cache) throws IOException {
+        Map<String, String> config = new LinkedHashMap<>();
+        config.put("warmupSeconds", String.valueOf(warmupSec));
+        config.put("measureSeconds", String.valueOf(timeSec));
+        config.put("seed", String.valueOf(seed));
+        config.put("catalogCache", String.valueOf(cache));
+
+        StringBuilder sb = new StringBuilder();
+        sb.append("{\n");
+        sb.append("  \"timestamp\": \"").append(Instant.now()).append("\",\n");
+        sb.append("  \"java\": \"").append(System.getProperty("java.version")).append("\",\n");
+        sb.append("  \"config\": {");
+        int n = 0;
+        for (Map.Entry<String, String> e : config.entrySet()) {
+            sb.append(n++ == 0 ? "" : ", ").append('"').append(e.getKey()).append("\": ").append(e.getValue());
+        }
+        sb.append("},\n");
+        sb.append("  \"results\": [\n");
+        for (int i = 0; i < results.size(); i++) {
+            Result r = results.get(i);
+            Histogram h = r.latency;
+            sb.append(String.format(Locale.ROOT,
+                    "    {\"scale\": \"%s\", \"op\": \"%s\", \"threads\": %d, \"ops\": %d, \"seconds\": %.3f, "
+                    + "\"opsPerSec\": %.1f, \"latencyUs\": {\"mean\": %.1f, \"p50\": %.1f, \"p90\": %.1f, "
+                    + "\"p99\": %.1f, \"p999\": %.1f, \"max\": %.1f}}%s%n",
+                    r.scale, r.op, r.threads, r.ops, r.seconds, r.ops / r.seconds,
+                    h.mean() / 1000, h.percentile(0.50) / 1000.0, h.percentile(0.90) / 1000.0,
+                    h.percentile(0.99) / 1000.0, h.percentile(0.999) / 1000.0, h.max() / 1000.0,
+                    i < results.size() - 1 ? "," : ""));
+        }
+        sb.append("  ]\n}\n");
+        if (out.getParent() != null) {
+            Files.createDirectories(out.getParent());
+        }
+        Files.writeString(out, sb.toString(), StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,95 @@
+package frontend;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+import javax.swing.JLabel;
+import javax.swing.JTextField;
+import javax.swing.SwingUtilities;
+import javax.swing.Timer;
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
+
+import backend.AsyncDBManager;
+
+// Search-as-you-type without freezing the EDT. Keystrokes restart a short timer, only when the user stops
+// typing for delayMs the query runs through AsyncDBManager. A newer search cancels the one still running,
+// which aborts its SQLite statement and gives the read connection back (see AsyncDBManager), and only the
+// result of the latest search reaches onResult (which is called on the EDT).
+// An empty field doesn't query at all, it calls onCleared instead.
+public class DebouncedSearch<T> {
+    private final JTextField field;
+    private final JLabel status;
+    private final Function<String, List<T>> query;
+    private final Consumer<List<T>> onResult;
+    private final Runnable onCleared;
+    private final Timer timer;
+
+    private CompletableFuture<List<T>> running;
+    private int generation;
+
+    public DebouncedSearch(JTextField field, JLabel status, int delayMs,
+                           Function<String, List<T>> query, Consumer<List<T>> onResult, Runnable onCleared) {
+        this.field = field;
+        this.status = status;
+        this.query = query;
+        this.onResult = onResult;
+        this.onCleared = onCleared;
+
+        timer = new Timer(delayMs, e -> search());
+        timer.setRepeats(false);
+
+        field.getDocument().addDocumentListener(new DocumentListener() {
+            @Override
+            public void insertUpdate(DocumentEvent e) {
+                timer.restart();
+            }
+
+            @Override
+            public void removeUpdate(DocumentEvent e) {
+                timer.restart();
+            }
+
+            @Override
+            public void changedUpdate(DocumentEvent e) {
+                timer.restart();
+            }
+        });
+    }
+
+    // runs the search for whatever is in the field right now, skipping the delay
+    public void search() {
+        timer.stop();
+        if (running != null) {
+            running.cancel(true);
+        }
+
+        String keyword = field.getText().trim();
+        int mine = ++generation;
+        if (keyword.isEmpty()) {
+            running = null;
+            status.setText(" ");
+            onCleared.run();
+            return;
+        }
+        status.setText("Searching…");
+
+        // cancel() only reaches the statement through the future read() returns, so keep that one
+        running = AsyncDBManager.read(() -> query.apply(keyword));
+        running.whenComplete((result, error) -> SwingUtilities.invokeLater(() -> {
+            if (mine != generation) {
+                return; // cancelled, or a newer search is already on its way
+            }
+            running = null;
+            if (error != null) {
+                status.setText("Search failed");
+                error.printStackTrace();
+                return;
+            }
+            status.setText(" ");
+            onResult.accept(result);
+        }));
+    }
+}
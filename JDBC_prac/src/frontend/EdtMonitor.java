@@ -0,0 +1,70 @@
+package frontend;
+
+import java.awt.AWTEvent;
+import java.awt.EventQueue;
+import java.awt.Toolkit;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+
+// Times every event the EDT dispatches and records the slow ones as JFR "EDT Stall" events. The cutoff is
+// JFR's own threshold (100 ms unless the recording settings say otherwise), so the check costs next to
+// nothing when no recording runs. The library.DBCall events of the AWT-EventQueue thread inside a stall
+// show which queries were blocking the UI.
+// Events that open a modal dialog run a nested event loop, they're skipped instead of reported as one
+// stall lasting as long as the dialog was open.
+public class EdtMonitor extends EventQueue {
+    private static final int MAX_DESCRIPTION = 200;
+
+    private int dispatched; // only touched on the EDT
+
+    @Name("library.EdtStall")
+    @Label("EDT Stall")
+    @Category({"Library", "UI"})
+    @Description("An AWT event or invokeLater task that kept the event dispatch thread busy")
+    @Threshold("100 ms")
+    @StackTrace(false)
+    static class EdtStallEvent extends jdk.jfr.Event {
+        @Label("Event")
+        String event;
+
+        @Label("Source")
+        String source;
+    }
+
+    // call once at startup, before the first window is shown
+    public static void install() {
+        Toolkit.getDefaultToolkit().getSystemEventQueue().push(new EdtMonitor());
+    }
+
+    @Override
+    protected void dispatchEvent(AWTEvent event) {
+        EdtStallEvent stall = new EdtStallEvent();
+        if (!stall.isEnabled()) {
+            super.dispatchEvent(event);
+            return;
+        }
+        int before = ++dispatched;
+        stall.begin();
+        try {
+            super.dispatchEvent(event);
+        } finally {
+            stall.end();
+            if (dispatched == before && stall.shouldCommit()) {
+                stall.event = describe(event);
+                stall.source = event.getSource() == null ? null : event.getSource().getClass().getName();
+                stall.commit();
+            }
+        }
+    }
+
+    // for invokeLater tasks paramString() names the Runnable (lambda class), which points at the code
+    private static String describe(AWTEvent event) {
+        String text = event.getClass().getSimpleName() + " " + event.paramString();
+        return text.length() > MAX_DESCRIPTION ? text.substring(0, MAX_DESCRIPTION) + "..." : text;
+    }
+}
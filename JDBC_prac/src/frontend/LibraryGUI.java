@@ -5,48 +5,172 @@ import models.BorrowedBook;
 import models.User;
 
 import java.awt.BorderLayout;
+import java.awt.Component;
 import java.awt.FlowLayout;
+import java.awt.Graphics;
 import java.awt.GridLayout;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.time.temporal.ChronoUnit;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
 
 import javax.swing.*;
-import javax.swing.event.DocumentEvent;
-import javax.swing.event.DocumentListener;
-import javax.swing.table.DefaultTableModel;
 
+import backend.AsyncDBManager;
+import backend.BorrowResult;
+import backend.DBConfig;
 import backend.DBManager;
+import backend.LoanArchiver;
 
 public class LibraryGUI extends JFrame {
+	private static final int SEARCH_DELAY_MS = 250;
+	// a search shows the best SEARCH_LIMIT matches, a short prefix can match most of the table
+	private static final int SEARCH_LIMIT = 500;
+	// tables load PAGE_SIZE rows at a time and keep at most MAX_CACHED_PAGES of them around
+	private static final int PAGE_SIZE = 200;
+	private static final int MAX_CACHED_PAGES = 20;
+	// most loans a date filter on the History view shows
+	private static final int HISTORY_FILTER_LIMIT = 5000;
+	// most loans the Overdue view shows, longest out first
+	private static final int OVERDUE_LIMIT = 5000;
+	// loan dates in the tables, local time
+	private static final DateTimeFormatter LOAN_DATE = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm").withZone(ZoneId.systemDefault());
+
 	private JTable userTable;
-	private DefaultTableModel userModel;
+	private PagedTableModel<User> userModel;
 	private JTable bookTable;
-	private DefaultTableModel bookModel;
+	private PagedTableModel<Book> bookModel;
 	private JTable borrowedBooksTable;
-	private DefaultTableModel borrowedBooksModel;
+	private PagedTableModel<BorrowedBook> borrowedBooksModel; // open loans, the Active view
+	private PagedTableModel<BorrowedBook> loanHistoryModel;
+	private boolean historyOpened;
+	private StatisticsPanel statisticsPanel;
+	private boolean overdueShown; // the Active model shows the overdue loans instead
+	private JLabel overdueStatus;
+
+	// the window comes up before the schema migrations are done, tables only start loading after dbReady.
+	// then the visible tab loads first, the others when they get selected or once the visible one is done
+	private final CompletableFuture<Void> dbReady;
+	private JTabbedPane tabbedPane;
+	private final Map<Component, PagedTableModel<?>> tabModels = new LinkedHashMap<>();
+	private final Set<PagedTableModel<?>> notLoadedYet = new HashSet<>();
+	private boolean painted;
 	
-    public LibraryGUI() {
+    public LibraryGUI(CompletableFuture<Void> dbReady) {
+        this.dbReady = dbReady;
         setTitle("Bibliotheksverwaltung");
         setSize(800, 600);
         setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
         setLocationRelativeTo(null);
         
         initUI();
+        dbReady.whenComplete((ok, error) -> SwingUtilities.invokeLater(() -> {
+            loadTab(tabbedPane.getSelectedComponent());
+            watchForChanges();
+            LoanArchiver.start();
+        }));
+    }
+
+    @Override
+    public void paint(Graphics g) {
+        super.paint(g);
+        if (!painted) {
+            painted = true;
+            StartupTimer.mark("first paint");
+        }
+    }
+
+    // reloads just the tabs whose tables changed, whether it was us or another desk on the same db.
+    // a table showing search results is left alone until the search gets cleared
+    private void watchForChanges() {
+        DBManager.changeMonitor().addListener(tables -> SwingUtilities.invokeLater(() -> {
+            if (tables.contains("users") && !userModel.isShowingRows()) {
+                loadUsers();
+            }
+            if (tables.contains("books") && !bookModel.isShowingRows()) {
+                loadBooks();
+            }
+            if (tables.contains("borrowed_books") || tables.contains("loan_archive")) {
+                loadBorrowedBooks();
+            }
+            // the statistics only change together with loans or books. a hidden tab catches up when selected
+            if ((tables.contains("borrowed_books") || tables.contains("books"))
+                    && tabbedPane.getSelectedComponent() == statisticsPanel) {
+                statisticsPanel.refresh();
+            }
+        }));
     }
 
     private void initUI() {
-        JTabbedPane tabbedPane = new JTabbedPane();
+        tabbedPane = new JTabbedPane();
 
         JPanel userPanel = createUserPanel();        
         JPanel bookPanel = createBookPanel();
         JPanel borrowedBooksPanel = createBorrowedBooksPanel();
+        statisticsPanel = new StatisticsPanel();
         
         tabbedPane.addTab("Users", userPanel);
         tabbedPane.addTab("Books", bookPanel);
         tabbedPane.addTab("Borrowed Books", borrowedBooksPanel);
+        tabbedPane.addTab("Statistics", statisticsPanel);
+        lazyTab(userPanel, userModel, "users tab loaded");
+        lazyTab(bookPanel, bookModel, "books tab loaded");
+        lazyTab(borrowedBooksPanel, borrowedBooksModel, "loans tab loaded");
+        tabbedPane.addChangeListener(e -> loadTab(tabbedPane.getSelectedComponent()));
         
         add(tabbedPane);
     }
 
+    private void lazyTab(Component tab, PagedTableModel<?> model, String startupMark) {
+        tabModels.put(tab, model);
+        notLoadedYet.add(model);
+        model.whenFirstLoaded(() -> {
+            StartupTimer.mark(startupMark);
+            if (tab == tabbedPane.getSelectedComponent()) {
+                // first screen is up, the rest can load in the background (each model has its own loader thread)
+                for (Component other : tabModels.keySet()) {
+                    loadTab(other);
+                }
+            }
+        });
+    }
+
+    // first load of a tab's table, does nothing if it's already loaded or the db isn't ready yet.
+    // the Statistics tab has no paged table, it's just read again every time it gets selected (a few rows)
+    private void loadTab(Component tab) {
+        if (tab == statisticsPanel && dbReady.isDone()) {
+            statisticsPanel.refresh();
+            return;
+        }
+        PagedTableModel<?> model = tabModels.get(tab);
+        if (model != null && dbReady.isDone() && notLoadedYet.remove(model)) {
+            model.refresh();
+        }
+    }
+
+    // refresh after a change, search cleared etc. before the db is ready there is nothing to refresh yet
+    private void reload(PagedTableModel<?> model) {
+        if (dbReady.isDone()) {
+            notLoadedYet.remove(model);
+            model.refresh();
+        }
+    }
+
+    // "Loading…" in place of the table until the first count is in, an empty table looks like an empty db
+    private static JScrollPane placeholderUntilLoaded(JTable table, PagedTableModel<?> model) {
+        JScrollPane scrollPane = new JScrollPane(new JLabel("Loading…", SwingConstants.CENTER));
+        model.whenFirstLoaded(() -> scrollPane.setViewportView(table));
+        return scrollPane;
+    }
+
     private JPanel createUserPanel() {
         JPanel panel = new JPanel(new BorderLayout());
 
@@ -56,37 +180,29 @@ public class LibraryGUI extends JFrame {
         searchPanel.add(new JLabel("Search: "));
         searchPanel.add(searchField);
         
-        searchField.getDocument().addDocumentListener(new DocumentListener() {
-            @Override
-            public void insertUpdate(DocumentEvent e) {
-                performSearch();
-            }
-
-            @Override
-            public void removeUpdate(DocumentEvent e) {
-                performSearch();
-            }
+        JLabel searchStatus = new JLabel(" ");
+        searchPanel.add(searchStatus);
 
-            @Override
-            public void changedUpdate(DocumentEvent e) {
-                performSearch();
-            }
-
-            private void performSearch() {
-                String keyword = searchField.getText().trim();
-                if (!keyword.isEmpty()) {
-                    loadSearchedUsers(keyword);
-                } else {
-                    loadUsers(); 
-                }
-            }
-        });
+        // runs off the EDT, a while after the last keystroke. empty field pages through everything again
+        new DebouncedSearch<>(searchField, searchStatus, SEARCH_DELAY_MS,
+                keyword -> DBManager.searchUsers(keyword, 0, SEARCH_LIMIT), users -> {
+                    userModel.showRows(users);
+                    searchStatus.setText(searchLimitHint(users));
+                }, this::refreshUserTable);
 
         String[] columnNames = {"ID", "First Name", "Last Name", "Email", "Phone"};
-        userModel = new DefaultTableModel(columnNames, 0);
+        userModel = new PagedTableModel<>(columnNames, new PagedTableModel.Source<User>() {
+            public int count() { return DBManager.countUsers(); }
+            public int countUpTo(long id) { return DBManager.countUsersUpTo(id); }
+            public List<User> page(long afterId, int limit) { return DBManager.getUsersPage(afterId, limit); }
+            public long keyAt(long afterId, int offset) { return DBManager.findUserIdAfter(afterId, offset); }
+            public long keyOf(User user) { return user.getId(); }
+            public Object[] toRow(User user) {
+                return new Object[]{user.getId(), user.getFirstName(), user.getLastName(), user.getEmail(), user.getPhone()};
+            }
+        }, PAGE_SIZE, MAX_CACHED_PAGES);
         userTable = new JTable(userModel);
-        loadUsers(); 
-        JScrollPane scrollPane = new JScrollPane(userTable);
+        JScrollPane scrollPane = placeholderUntilLoaded(userTable, userModel);
 
         JPanel buttonPanel = new JPanel();
 
@@ -114,29 +230,14 @@ public class LibraryGUI extends JFrame {
         return panel;
     }
 
-    private void loadSearchedUsers(String keyword) {
-        userModel.setRowCount(0); // Clear table
-        for (User user : DBManager.searchUsers(keyword)) {
-            userModel.addRow(new Object[]{user.getId(), user.getFirstName(), user.getLastName(), user.getEmail(), user.getPhone()});
-        }
-    }
-
     private void refreshUserTable() {
-        userModel.setRowCount(0);
         loadUsers();
     }
-    // See User class in models package for model properties. Backend function is getAllUsers in DBManager class in backend package.
+    // See User class in models package for model properties. Rows are paged in by PagedTableModel
+    // through getUsersPage in DBManager, only what's on screen gets loaded. refresh() only repaints
+    // the rows that actually changed, selection and scroll position stay.
     private void loadUsers() {
-        List<User> users = DBManager.getAllUsers(); 
-        for (User user : users) {
-            userModel.addRow(new Object[]{
-                user.getId(),
-                user.getFirstName(),
-                user.getLastName(),
-                user.getEmail(),
-                user.getPhone()
-            });
-        }
+        reload(userModel);
     }
 
 
@@ -155,20 +256,18 @@ public class LibraryGUI extends JFrame {
 
         int option = JOptionPane.showConfirmDialog(null, fields, "Add User", JOptionPane.OK_CANCEL_OPTION);
         if (option == JOptionPane.OK_OPTION) {
-            DBManager.addUser(
+            afterWrite(AsyncDBManager.addUser(
                 firstNameField.getText(),
                 lastNameField.getText(),
                 emailField.getText(),
                 phoneField.getText()
-            );
-            JOptionPane.showMessageDialog(null, "User added successfully!");
-            refreshUserTable();
+            ), "User added successfully!", this::refreshUserTable);
         }
     }
 
     private void showEditUserDialog() {
         int selectedRow = userTable.getSelectedRow();
-        if (selectedRow == -1) {
+        if (selectedRow == -1 || !userModel.isRowLoaded(selectedRow)) {
             JOptionPane.showMessageDialog(null, "Please select a user to edit.", "Error", JOptionPane.ERROR_MESSAGE);
             return;
         }
@@ -199,19 +298,17 @@ public class LibraryGUI extends JFrame {
             "Edit User", JOptionPane.OK_CANCEL_OPTION, JOptionPane.PLAIN_MESSAGE);
 
         if (result == JOptionPane.OK_OPTION) {
-            DBManager.updateUser(userId, 
-                firstNameField.getText().trim(), 
-                lastNameField.getText().trim(), 
-                emailField.getText().trim(), 
-                phoneField.getText().trim());
-
-            refreshUserTable();
+            afterWrite(AsyncDBManager.updateUser(userId,
+                firstNameField.getText().trim(),
+                lastNameField.getText().trim(),
+                emailField.getText().trim(),
+                phoneField.getText().trim()), null, () -> userModel.refreshRow(userId));
         }
     }
 
     private void deleteUser() {
         int selectedRow = userTable.getSelectedRow();
-        if (selectedRow == -1) {
+        if (selectedRow == -1 || !userModel.isRowLoaded(selectedRow)) {
             JOptionPane.showMessageDialog(null, "Please select a user to delete.", "Error", JOptionPane.ERROR_MESSAGE);
             return;
         }
@@ -222,8 +319,7 @@ public class LibraryGUI extends JFrame {
             "Confirm Deletion", JOptionPane.YES_NO_OPTION);
 
         if (confirm == JOptionPane.YES_OPTION) {
-            DBManager.deleteUser(userId);
-            refreshUserTable(); 
+            afterWrite(AsyncDBManager.deleteUser(userId), null, this::refreshUserTable);
         }
     }
 
@@ -236,38 +332,37 @@ public class LibraryGUI extends JFrame {
         searchPanel.add(new JLabel("Search: "));
         searchPanel.add(searchField);
         
-        searchField.getDocument().addDocumentListener(new DocumentListener() {
-            @Override
-            public void insertUpdate(DocumentEvent e) {
-                performSearch();
-            }
-
-            @Override
-            public void removeUpdate(DocumentEvent e) {
-                performSearch();
-            }
-
-            @Override
-            public void changedUpdate(DocumentEvent e) {
-                performSearch();
-            }
+        JLabel searchStatus = new JLabel(" ");
+        searchPanel.add(searchStatus);
 
-            private void performSearch() {
-                String keyword = searchField.getText().trim();
-                if (!keyword.isEmpty()) {
-                    loadSearchedBooks(keyword);
-                } else {
-                    loadBooks(); 
-                }
-            }
-        });
+        // runs off the EDT, a while after the last keystroke. empty field pages through everything again
+        new DebouncedSearch<>(searchField, searchStatus, SEARCH_DELAY_MS,
+                keyword -> DBManager.searchBooks(keyword, 0, SEARCH_LIMIT), books -> {
+                    bookModel.showRows(books);
+                    searchStatus.setText(searchLimitHint(books));
+                }, this::refreshBookTable);
 
         String[] columnNames = {"ID", "Title", "Author", "Year", "ISBN", "Borrowed"};
-        bookModel = new DefaultTableModel(columnNames, 0);
+        bookModel = new PagedTableModel<>(columnNames, new PagedTableModel.Source<Book>() {
+            public int count() { return DBManager.countBooks(); }
+            public int countUpTo(long id) { return DBManager.countBooksUpTo(id); }
+            public List<Book> page(long afterId, int limit) { return DBManager.getBooksPage(afterId, limit); }
+            public long keyAt(long afterId, int offset) { return DBManager.findBookIdAfter(afterId, offset); }
+            public long keyOf(Book book) { return book.getId(); }
+            public Object[] toRow(Book book) {
+                return new Object[]{
+                		book.getId(),
+                		book.getTitle(),
+                		book.getAuthor(),
+                		book.getYear(),
+                		book.getIsbn(),
+                		(book.isBorrowed()) ? "Yes" : "No"
+                		};
+            }
+        }, PAGE_SIZE, MAX_CACHED_PAGES);
         bookTable = new JTable(bookModel);
         TableStyler.applyTableStyle(bookTable);
-        loadBooks(); // Load books into the global model
-        JScrollPane scrollPane = new JScrollPane(bookTable);
+        JScrollPane scrollPane = placeholderUntilLoaded(bookTable, bookModel);
         
         
         
@@ -307,33 +402,9 @@ public class LibraryGUI extends JFrame {
         return panel;
     }
 
-    private void loadSearchedBooks(String keyword) {
-        bookModel.setRowCount(0); // Clear table
-        for (Book book : DBManager.searchBooks(keyword)) {
-            bookModel.addRow(new Object[]{
-            		book.getId(),
-            		book.getTitle(), 
-            		book.getAuthor(), 
-            		book.getYear(),
-            		book.getIsbn(), 
-            		(book.isBorrowed()) ? "Yes" : "No"
-        			});
-        }
-    }
-
-
-    // see Book class in models package for model info. Backend function is getAllBooks in DBManager in backend package.
+    // see Book class in models package for model info. Backend function is getBooksPage in DBManager in backend package.
     private void loadBooks() {
-        for (Book book : DBManager.getAllBooks()) {
-            bookModel.addRow(new Object[]{
-            		book.getId(), 
-            		book.getTitle(), 
-            		book.getAuthor(), 
-            		book.getYear(), 
-            		book.getIsbn(),
-            		(book.isBorrowed()) ? "Yes" : "No"
-            		});
-        }
+        reload(bookModel);
     }
     
     private void showAddBookDialog() {
@@ -355,19 +426,18 @@ public class LibraryGUI extends JFrame {
         int result = JOptionPane.showConfirmDialog(null, panel, "Add Book", JOptionPane.OK_CANCEL_OPTION, JOptionPane.PLAIN_MESSAGE);
 
         if (result == JOptionPane.OK_OPTION) {
-            DBManager.addBook(
+            afterWrite(AsyncDBManager.addBook(
                 titleField.getText().trim(),
                 authorField.getText().trim(),
                 Integer.parseInt(yearField.getText().trim()),
                 isbnField.getText().trim()
-            );
-            refreshBookTable();
+            ), null, this::refreshBookTable);
         }
     }
 
     private void showEditBookDialog() {
         int selectedRow = bookTable.getSelectedRow();
-        if (selectedRow == -1) {
+        if (selectedRow == -1 || !bookModel.isRowLoaded(selectedRow)) {
             JOptionPane.showMessageDialog(null, "Please select a book to edit.", "Error", JOptionPane.ERROR_MESSAGE);
             return;
         }
@@ -396,61 +466,68 @@ public class LibraryGUI extends JFrame {
         int result = JOptionPane.showConfirmDialog(null, panel, "Edit Book", JOptionPane.OK_CANCEL_OPTION, JOptionPane.PLAIN_MESSAGE);
 
         if (result == JOptionPane.OK_OPTION) {
-            DBManager.updateBook(bookId, titleField.getText().trim(), authorField.getText().trim(), Integer.parseInt(yearField.getText().trim()), isbnField.getText().trim());
-            refreshBookTable();
+            afterWrite(AsyncDBManager.updateBook(bookId, titleField.getText().trim(), authorField.getText().trim(),
+                    Integer.parseInt(yearField.getText().trim()), isbnField.getText().trim()), null, () -> bookModel.refreshRow(bookId));
         }
     }
     
     private void borrowBook() {
         int selectedRow = bookTable.getSelectedRow();
-        if (selectedRow == -1) {
+        if (selectedRow == -1 || !bookModel.isRowLoaded(selectedRow)) {
             JOptionPane.showMessageDialog(null, "Please select a book to borrow.", "Error", JOptionPane.ERROR_MESSAGE);
             return;
         }
 
         int bookId = (int) bookModel.getValueAt(selectedRow, 0);
-        boolean isBorrowed = (bookModel.getValueAt(selectedRow, 5) == "Yes") ? true : false; // checks if there's a "yes" or a "no" in the cell, and converts it to boolean cuz in SQL table it's a bool value
-
-        if (isBorrowed) {
-            JOptionPane.showMessageDialog(null, "This book is already borrowed!", "Error", JOptionPane.ERROR_MESSAGE);
-            return;
-        }
-
-        // User selection menu modal window to borrow the book
-        List<User> users = DBManager.getAllUsers();
-        String[] userNames = users.stream().map(u -> u.getId() + " - " + u.getFirstName() + " " + u.getLastName()).toArray(String[]::new);
-        String selectedUser = (String) JOptionPane.showInputDialog(null, "Select a user:", "Borrow Book",
-                JOptionPane.QUESTION_MESSAGE, null, userNames, userNames[0]);
-
-        if (selectedUser != null) {
-            int userId = Integer.parseInt(selectedUser.split(" - ")[0]); // Extract user ID
-            DBManager.borrowBook(bookId, userId);
-            refreshBookTable();
+        // no check of the "Borrowed" cell here, it can be stale (another desk may have lent or returned the
+        // book meanwhile). tryBorrow decides and says ALREADY_LENT if it's out
+
+        // User lookup modal window to borrow the book, only loads the users matching what's typed (see UserPickerDialog)
+        User user = UserPickerDialog.pick(this, "Borrow Book");
+
+        if (user != null) {
+            // off the EDT, tryBorrow sleeps between retries while another desk holds the write lock
+            AsyncDBManager.tryBorrow(bookId, user.getId()).whenComplete((result, error) -> SwingUtilities.invokeLater(() -> {
+                switch (error != null ? BorrowResult.FAILED : result) {
+                    case BORROWED -> { }
+                    case ALREADY_LENT -> JOptionPane.showMessageDialog(null, "This book is already borrowed.",
+                            "Error", JOptionPane.ERROR_MESSAGE);
+                    case NOT_FOUND -> JOptionPane.showMessageDialog(null, "This book or user no longer exists.",
+                            "Error", JOptionPane.ERROR_MESSAGE);
+                    case BUSY -> JOptionPane.showMessageDialog(null, "The database is busy, please try again.",
+                            "Error", JOptionPane.ERROR_MESSAGE);
+                    case FAILED -> JOptionPane.showMessageDialog(null, "Could not borrow the book.",
+                            "Error", JOptionPane.ERROR_MESSAGE);
+                }
+                bookModel.refreshRow(bookId);
+                loadBorrowedBooks();
+            }));
         }
     }
     
     private void returnBook() {
         int selectedRow = bookTable.getSelectedRow();
-        if (selectedRow == -1) {
+        if (selectedRow == -1 || !bookModel.isRowLoaded(selectedRow)) {
             JOptionPane.showMessageDialog(null, "Please select a book to return.", "Error", JOptionPane.ERROR_MESSAGE);
             return;
         }
 
         int bookId = (int) bookModel.getValueAt(selectedRow, 0);
-        boolean isBorrowed = (bookModel.getValueAt(selectedRow, 5) == "Yes") ? true : false; // checks if there's a "yes" or a "no" in the cell, and converts it to boolean cuz in SQL table it's a bool value
-
-        if (!isBorrowed) {
-            JOptionPane.showMessageDialog(null, "This book is not borrowed!", "Error", JOptionPane.ERROR_MESSAGE);
-            return;
-        }
-
-        DBManager.returnBook(bookId);
-        refreshBookTable();
+        // like borrowBook: the "Borrowed" cell can be stale, what the update changed decides the message
+        AsyncDBManager.returnBook(bookId).whenComplete((returned, error) -> SwingUtilities.invokeLater(() -> {
+            if (error != null || returned < 0) {
+                JOptionPane.showMessageDialog(null, "Could not return the book.", "Error", JOptionPane.ERROR_MESSAGE);
+            } else if (returned == 0) {
+                JOptionPane.showMessageDialog(null, "This book is not borrowed!", "Error", JOptionPane.ERROR_MESSAGE);
+            }
+            bookModel.refreshRow(bookId);
+            loadBorrowedBooks();
+        }));
     }
 
     private void deleteBook() {
         int selectedRow = bookTable.getSelectedRow();
-        if (selectedRow == -1) {
+        if (selectedRow == -1 || !bookModel.isRowLoaded(selectedRow)) {
             JOptionPane.showMessageDialog(null, "Please select a book to delete.", "Error", JOptionPane.ERROR_MESSAGE);
             return;
         }
@@ -459,50 +536,194 @@ public class LibraryGUI extends JFrame {
         int confirm = JOptionPane.showConfirmDialog(null, "Are you sure you want to delete this book?", "Confirm Deletion", JOptionPane.YES_NO_OPTION);
 
         if (confirm == JOptionPane.YES_OPTION) {
-            DBManager.deleteBook(bookId);
-            refreshBookTable();
+            afterWrite(AsyncDBManager.deleteBook(bookId), null, this::refreshBookTable);
         }
     }
 
+    // writes run off the EDT (with group commit each one waits for the commit window and the fsync, and maybe
+    // for another desk's lock). then back on the EDT: `success` if there is one, and `refresh` in any case,
+    // so the table shows what really is in the database
+    private static void afterWrite(CompletableFuture<Void> write, String success, Runnable refresh) {
+        write.whenComplete((ignored, error) -> SwingUtilities.invokeLater(() -> {
+            if (error != null) {
+                error.printStackTrace();
+                JOptionPane.showMessageDialog(null, "Saving failed: " + error.getMessage(), "Error", JOptionPane.ERROR_MESSAGE);
+            } else if (success != null) {
+                JOptionPane.showMessageDialog(null, success);
+            }
+            refresh.run();
+        }));
+    }
+
     private void refreshBookTable() {
-    	bookModel.setRowCount(0);
     	loadBooks();
     }
 
+    // three views on one table: Active (open loans, as fast with 10 years of history as with none),
+    // Overdue (open loans older than library.loan.days) and History (returned loans incl. the archive,
+    // see LoanArchiver), which can be narrowed to a borrow date range
     private JPanel createBorrowedBooksPanel() {
         JPanel panel = new JPanel();
         panel.setLayout(new BorderLayout());
 
         String[] columnNames = {"Book ID", "Title", "Author", "Borrower", "Borrow Date", "Return Date"};
-        borrowedBooksModel = new DefaultTableModel(columnNames, 0);
+        borrowedBooksModel = new PagedTableModel<>(columnNames, new PagedTableModel.Source<BorrowedBook>() {
+            public int count() { return DBManager.countActiveLoans(); }
+            public int countUpTo(long bookId) { return DBManager.countActiveLoansUpTo(bookId); }
+            public List<BorrowedBook> page(long afterId, int limit) { return DBManager.getActiveLoansPage(afterId, limit); }
+            public long keyAt(long afterId, int offset) { return DBManager.findActiveLoanBookIdAfter(afterId, offset); }
+            public long keyOf(BorrowedBook book) { return book.getId(); }
+            public Object[] toRow(BorrowedBook book) { return loanRow(book); }
+        }, PAGE_SIZE, MAX_CACHED_PAGES);
+        loanHistoryModel = new PagedTableModel<>(columnNames, new PagedTableModel.Source<BorrowedBook>() {
+            public int count() { return DBManager.countLoanHistory(); }
+            public int countUpTo(long loanId) { return DBManager.countLoanHistoryUpTo(loanId); }
+            public List<BorrowedBook> page(long afterId, int limit) { return DBManager.getLoanHistoryPage(afterId, limit); }
+            public long keyAt(long afterId, int offset) { return DBManager.findHistoryLoanIdAfter(afterId, offset); }
+            public long keyOf(BorrowedBook book) { return book.getLoanId(); }
+            public Object[] toRow(BorrowedBook book) { return loanRow(book); }
+        }, PAGE_SIZE, MAX_CACHED_PAGES);
         borrowedBooksTable = new JTable(borrowedBooksModel);
-        JScrollPane scrollPane = new JScrollPane(borrowedBooksTable);
-        loadBorrowedBooks();
+        JScrollPane scrollPane = placeholderUntilLoaded(borrowedBooksTable, borrowedBooksModel);
+
+        JComboBox<String> view = new JComboBox<>(new String[] {"Active loans", "Overdue", "History"});
+        JTextField fromField = new JTextField(8);
+        JTextField toField = new JTextField(8);
+        JButton filterButton = new JButton("Filter");
+        JButton clearButton = new JButton("Clear");
+        JLabel historyStatus = new JLabel(" ");
+        overdueStatus = new JLabel(" ");
+        overdueStatus.setVisible(false);
+        JPanel historyFilter = new JPanel(new FlowLayout());
+        historyFilter.add(new JLabel("Borrowed from (yyyy-mm-dd): "));
+        historyFilter.add(fromField);
+        historyFilter.add(new JLabel("to: "));
+        historyFilter.add(toField);
+        historyFilter.add(filterButton);
+        historyFilter.add(clearButton);
+        historyFilter.add(historyStatus);
+        historyFilter.setVisible(false);
+
+        view.addActionListener(e -> {
+            boolean history = view.getSelectedIndex() == 2;
+            boolean overdue = view.getSelectedIndex() == 1;
+            historyFilter.setVisible(history);
+            overdueStatus.setVisible(overdue);
+            borrowedBooksTable.setModel(history ? loanHistoryModel : borrowedBooksModel);
+            if (history && !historyOpened) {
+                historyOpened = true;
+                reload(loanHistoryModel);
+            }
+            if (overdue != overdueShown) {
+                overdueShown = overdue;
+                loadActiveLoans();
+            }
+        });
+        filterButton.addActionListener(e -> filterHistory(fromField.getText(), toField.getText(), historyStatus));
+        clearButton.addActionListener(e -> {
+            fromField.setText("");
+            toField.setText("");
+            historyStatus.setText(" ");
+            reload(loanHistoryModel);
+        });
+
+        JPanel topPanel = new JPanel(new FlowLayout(FlowLayout.LEFT));
+        topPanel.add(view);
+        topPanel.add(historyFilter);
+        topPanel.add(overdueStatus);
         
         JButton refreshButton = new JButton("Refresh");
         refreshButton.addActionListener(e -> loadBorrowedBooks());
 
+        panel.add(topPanel, BorderLayout.NORTH);
         panel.add(scrollPane, BorderLayout.CENTER);
         panel.add(refreshButton, BorderLayout.SOUTH);
         return panel;
     }
 
+    private static String searchLimitHint(List<?> results) {
+        return results.size() >= SEARCH_LIMIT ? "best " + SEARCH_LIMIT + " matches, type more to narrow it down" : " ";
+    }
+
+    private static Object[] loanRow(BorrowedBook book) {
+        return new Object[]{book.getId(), book.getTitle(), book.getAuthor(),
+                book.getBorrowerName(), loanDate(book.getBorrowDate()), loanDate(book.getReturnDate())};
+    }
+
+    private static String loanDate(Instant time) {
+        return time == null ? "" : LOAN_DATE.format(time);
+    }
+
+    // loans borrowed between the two dates (both inclusive, local time, either can be left empty), from the
+    // borrow_date index on the archive. runs off the EDT
+    private void filterHistory(String fromText, String toText, JLabel status) {
+        Instant from;
+        Instant to;
+        try {
+            ZoneId zone = ZoneId.systemDefault();
+            from = fromText.isBlank() ? Instant.EPOCH : LocalDate.parse(fromText.trim()).atStartOfDay(zone).toInstant();
+            to = toText.isBlank() ? Instant.now().plus(1, ChronoUnit.DAYS)
+                    : LocalDate.parse(toText.trim()).plusDays(1).atStartOfDay(zone).toInstant();
+        } catch (DateTimeParseException e) {
+            JOptionPane.showMessageDialog(null, "Dates look like 2024-03-31.", "Error", JOptionPane.ERROR_MESSAGE);
+            return;
+        }
+        status.setText("Searching…");
+        AsyncDBManager.getLoansBorrowedBetween(from, to, HISTORY_FILTER_LIMIT).thenAccept(loans -> SwingUtilities.invokeLater(() -> {
+            loanHistoryModel.showRows(loans);
+            status.setText(loans.size() >= HISTORY_FILTER_LIMIT ? "first " + HISTORY_FILTER_LIMIT + " loans" : loans.size() + " loans");
+        }));
+    }
+
+    // the History view only once it has been opened, and not while it shows a date filter's results
     private void loadBorrowedBooks() {
-        borrowedBooksModel.setRowCount(0);
-        for (BorrowedBook book : DBManager.getBorrowedBooks()) {
-            borrowedBooksModel.addRow(new Object[]{book.getId(), book.getTitle(), book.getAuthor(),
-                    book.getBorrowerName(), book.getBorrowDate(), book.getReturnDate()});
+        loadActiveLoans();
+        if (historyOpened && !loanHistoryModel.isShowingRows()) {
+            reload(loanHistoryModel);
+        }
+    }
+
+    // all open loans, or just the overdue ones (a range scan on idx_borrowed_books_open_since) off the EDT
+    private void loadActiveLoans() {
+        if (!overdueShown) {
+            reload(borrowedBooksModel);
+            return;
+        }
+        if (!dbReady.isDone()) {
+            return;
         }
+        overdueStatus.setText("Searching…");
+        AsyncDBManager.read(() -> Map.entry(DBManager.countOverdueLoans(), DBManager.getOverdueLoans(OVERDUE_LIMIT)))
+                .thenAccept(overdue -> SwingUtilities.invokeLater(() -> {
+                    if (!overdueShown) {
+                        return; // switched back to Active meanwhile
+                    }
+                    notLoadedYet.remove(borrowedBooksModel);
+                    borrowedBooksModel.showRows(overdue.getValue());
+                    int count = overdue.getKey();
+                    overdueStatus.setText(count + " out for more than " + DBConfig.loanDays() + " days"
+                            + (count > OVERDUE_LIMIT ? ", longest " + OVERDUE_LIMIT + " shown" : ""));
+                }));
     }
 
     
     public static void main(String[] args) {
+        StartupTimer.mark("main");
     	// See themeManager class. Used FlatLAF for Themes.
         ThemeManager.applyTheme();
+        // slow EDT tasks show up in flight recordings (see EdtMonitor)
+        EdtMonitor.install();
+        // applies pending schema migrations (cheap if the db is already up to date) and opens the pools,
+        // in the background while the window is being built
+        CompletableFuture<Void> dbReady = CompletableFuture.runAsync(() -> {
+            DBManager.createTables();
+            StartupTimer.mark("db ready");
+        }, task -> new Thread(task, "db-startup").start());
         
         SwingUtilities.invokeLater(() -> {
-            LibraryGUI app = new LibraryGUI();
+            LibraryGUI app = new LibraryGUI(dbReady);
             app.setVisible(true);
+            StartupTimer.mark("window shown");
         });
     }
 }
@@ -0,0 +1,460 @@
+package frontend;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import javax.swing.SwingUtilities;
+import javax.swing.table.AbstractTableModel;
+
+// Table model that only holds the rows you can (nearly) see. It knows the total row count and loads fixed
+// size pages in the background when the JTable asks for a row that isn't cached, using keyset pagination
+// on the entity id. At most maxPages pages stay in memory (LRU), so a huge table opens instantly.
+// Cells of pages that are still loading show up empty and get repainted when the page arrives.
+// showRows() switches to a plain list (search results), refresh() goes back to paging the whole table.
+//
+// refresh() doesn't throw the cached pages away: it re-reads them, diffs old against new by key and fires
+// row-level inserted/updated/deleted events, so selection and scroll position survive and an edit or
+// borrow repaints one row. refreshRow() is the even cheaper version when you know which row changed.
+public class PagedTableModel<T> extends AbstractTableModel {
+
+    // how the model talks to the backend. all of these run on a background thread
+    public interface Source<T> {
+        int count();
+        // rows with key <= key, i.e. the row index right after that key
+        int countUpTo(long key);
+        // rows with key > afterKey, ordered by key
+        List<T> page(long afterKey, int limit);
+        // key of the row `offset` rows after afterKey (0 = the next one), -1 if there is none
+        long keyAt(long afterKey, int offset);
+        long keyOf(T row);
+        Object[] toRow(T row);
+    }
+
+    private static final long FIRST_KEY = 0; // ids start at 1
+
+    private static final class Page {
+        final long[] keys;
+        final Object[][] rows;
+
+        Page(long[] keys, Object[][] rows) {
+            this.keys = keys;
+            this.rows = rows;
+        }
+    }
+
+    // a cached page read again by refresh(), plus where its first row is now
+    private static final class Reloaded {
+        final int page;
+        final long startKey;
+        final int newStart;
+        final Page fresh;
+
+        Reloaded(int page, long startKey, int newStart, Page fresh) {
+            this.page = page;
+            this.startKey = startKey;
+            this.newStart = newStart;
+            this.fresh = fresh;
+        }
+    }
+
+    private static final int INSERTED = 0;
+    private static final int UPDATED = 1;
+    private static final int DELETED = 2;
+
+    private final String[] columns;
+    private final Source<T> source;
+    private final int pageSize;
+    private final int maxPages;
+    private final ExecutorService loader;
+
+    // everything below is only touched on the EDT
+    private final Map<Integer, Page> pages;
+    // page number -> key right before that page. grows as pages get found, page 0 is always FIRST_KEY
+    private final TreeMap<Integer, Long> anchors = new TreeMap<>();
+    private final Set<Integer> loading = new HashSet<>();
+    private List<Object[]> fixedRows;
+    private long[] fixedKeys;
+    private int rowCount;
+    private int generation;
+    private boolean loaded;
+    private List<Runnable> onFirstLoad = new ArrayList<>();
+
+    public PagedTableModel(String[] columns, Source<T> source, int pageSize, int maxPages) {
+        this.columns = columns;
+        this.source = source;
+        this.pageSize = pageSize;
+        this.maxPages = maxPages;
+        this.pages = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Integer, Page> eldest) {
+                return size() > PagedTableModel.this.maxPages;
+            }
+        };
+        this.loader = Executors.newSingleThreadExecutor(r -> {
+            Thread t = new Thread(r, "table-page-loader");
+            t.setDaemon(true);
+            return t;
+        });
+        anchors.put(0, FIRST_KEY);
+    }
+
+    @Override
+    public int getRowCount() {
+        return fixedRows != null ? fixedRows.size() : rowCount;
+    }
+
+    @Override
+    public int getColumnCount() {
+        return columns.length;
+    }
+
+    @Override
+    public String getColumnName(int column) {
+        return columns[column];
+    }
+
+    @Override
+    public Object getValueAt(int row, int column) {
+        if (fixedRows != null) {
+            return fixedRows.get(row)[column];
+        }
+        int page = row / pageSize;
+        Page cached = pages.get(page);
+        if (cached == null) {
+            requestPage(page);
+            return null;
+        }
+        int index = row % pageSize;
+        return index < cached.rows.length ? cached.rows[index][column] : null;
+    }
+
+    // false while the row's page is still being fetched
+    public boolean isRowLoaded(int row) {
+        return fixedRows != null || pages.containsKey(row / pageSize);
+    }
+
+    // true while showRows() results are on screen instead of the paged table
+    public boolean isShowingRows() {
+        return fixedRows != null;
+    }
+
+    // false until the first refresh() or showRows() has put something (maybe zero rows) in the table
+    public boolean isLoaded() {
+        return loaded;
+    }
+
+    // runs on the EDT once the table is loaded for the first time, right away if it already is
+    public void whenFirstLoaded(Runnable action) {
+        if (loaded) {
+            action.run();
+        } else {
+            onFirstLoad.add(action);
+        }
+    }
+
+    private void firstLoadDone() {
+        if (loaded) {
+            return;
+        }
+        loaded = true;
+        List<Runnable> actions = onFirstLoad;
+        onFirstLoad = null;
+        for (Runnable action : actions) {
+            action.run();
+        }
+    }
+
+    // show exactly these rows (e.g. search results) instead of paging through the table
+    public void showRows(List<T> rows) {
+        generation++;
+        fixedRows = new ArrayList<>(rows.size());
+        fixedKeys = new long[rows.size()];
+        for (int i = 0; i < rows.size(); i++) {
+            fixedRows.add(source.toRow(rows.get(i)));
+            fixedKeys[i] = source.keyOf(rows.get(i));
+        }
+        fireTableDataChanged();
+        firstLoadDone();
+    }
+
+    // brings the table up to date. coming from search results (or with nothing loaded yet) it starts paging
+    // from scratch, otherwise the cached pages get re-read and only the rows that differ are announced
+    public void refresh() {
+        int mine = ++generation;
+        if (fixedRows != null || pages.isEmpty()) {
+            loader.execute(() -> {
+                int count = source.count();
+                SwingUtilities.invokeLater(() -> {
+                    if (mine == generation) {
+                        reset(count);
+                    }
+                });
+            });
+            return;
+        }
+
+        Map<Integer, Long> starts = new TreeMap<>();
+        for (Map.Entry<Integer, Page> entry : pages.entrySet()) {
+            Long start = anchors.get(entry.getKey());
+            if (start != null && entry.getValue().keys.length > 0) {
+                starts.put(entry.getKey(), start);
+            }
+        }
+        loader.execute(() -> {
+            int count = source.count();
+            List<Reloaded> reloaded = new ArrayList<>(starts.size());
+            for (Map.Entry<Integer, Long> entry : starts.entrySet()) {
+                long startKey = entry.getValue();
+                int newStart = startKey == FIRST_KEY ? 0 : source.countUpTo(startKey);
+                // twice the page size, so a few rows inserted into the page's key range still fit
+                reloaded.add(new Reloaded(entry.getKey(), startKey, newStart, toPage(source.page(startKey, pageSize * 2))));
+            }
+            SwingUtilities.invokeLater(() -> {
+                if (mine == generation) {
+                    applyDiff(count, reloaded);
+                }
+            });
+        });
+    }
+
+    // re-reads the row with this key and repaints just that one, e.g. after editing or borrowing it.
+    // rows that aren't loaded are left alone (they get read fresh when they scroll into view anyway),
+    // a row that's gone by now makes it a full refresh()
+    public void refreshRow(long key) {
+        if (rowOf(key) < 0) {
+            return;
+        }
+        int mine = generation;
+        loader.execute(() -> {
+            List<T> found = source.page(key - 1, 1);
+            Object[] fresh = !found.isEmpty() && source.keyOf(found.get(0)) == key ? source.toRow(found.get(0)) : null;
+            SwingUtilities.invokeLater(() -> {
+                if (mine != generation) {
+                    return;
+                }
+                if (fresh == null) {
+                    refresh();
+                    return;
+                }
+                int row = rowOf(key);
+                if (row < 0) {
+                    return;
+                }
+                if (fixedRows != null) {
+                    fixedRows.set(row, fresh);
+                } else {
+                    pages.get(row / pageSize).rows[row % pageSize] = fresh;
+                }
+                fireTableRowsUpdated(row, row);
+            });
+        });
+    }
+
+    // index of the loaded row with this key, -1 if it isn't loaded
+    private int rowOf(long key) {
+        if (fixedRows != null) {
+            for (int i = 0; i < fixedKeys.length; i++) {
+                if (fixedKeys[i] == key) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+        for (Map.Entry<Integer, Page> entry : pages.entrySet()) {
+            int index = Arrays.binarySearch(entry.getValue().keys, key);
+            if (index >= 0) {
+                return entry.getKey() * pageSize + index;
+            }
+        }
+        return -1;
+    }
+
+    private void reset(int count) {
+        fixedRows = null;
+        fixedKeys = null;
+        pages.clear();
+        loading.clear();
+        anchors.clear();
+        anchors.put(0, FIRST_KEY);
+        rowCount = count;
+        fireTableDataChanged();
+        firstLoadDone();
+    }
+
+    // Walks the table from top to bottom: the gaps between cached pages only changed in size (known from
+    // countUpTo), the cached pages are merged key by key against their new contents. Keys are sorted, so
+    // that's a plain merge: key only in old = deleted, only in new = inserted, in both = maybe updated.
+    // Events are collected in table order with indexes as they are after the earlier events, like JTable wants.
+    // If the pieces don't add up (someone wrote while we were reading) it just does a reset.
+    private void applyDiff(int newCount, List<Reloaded> reloaded) {
+        List<int[]> events = new ArrayList<>();
+        int oldEnd = 0;
+        int newEnd = 0;
+
+        for (Reloaded r : reloaded) {
+            Page old = pages.get(r.page);
+            int oldStart = r.page * pageSize;
+            if (old == null || r.newStart < newEnd) {
+                reset(newCount);
+                return;
+            }
+            gap(events, newEnd, oldStart - oldEnd, r.newStart - newEnd);
+
+            // only what's still inside this page's old key range, the rest belongs to the next gap
+            long lastKey = old.keys.length == pageSize ? old.keys[old.keys.length - 1] : Long.MAX_VALUE;
+            int n = 0;
+            while (n < r.fresh.keys.length && r.fresh.keys[n] <= lastKey) {
+                n++;
+            }
+            if (n == r.fresh.keys.length && n == pageSize * 2 && lastKey != Long.MAX_VALUE) {
+                reset(newCount); // more new rows in the range than we read
+                return;
+            }
+
+            int row = r.newStart;
+            int i = 0;
+            int j = 0;
+            while (i < old.keys.length || j < n) {
+                if (j == n || (i < old.keys.length && old.keys[i] < r.fresh.keys[j])) {
+                    addEvent(events, DELETED, row);
+                    i++;
+                } else if (i == old.keys.length || r.fresh.keys[j] < old.keys[i]) {
+                    addEvent(events, INSERTED, row);
+                    j++;
+                    row++;
+                } else {
+                    if (!Arrays.equals(old.rows[i], r.fresh.rows[j])) {
+                        addEvent(events, UPDATED, row);
+                    }
+                    i++;
+                    j++;
+                    row++;
+                }
+            }
+            oldEnd = oldStart + old.keys.length;
+            newEnd = row;
+        }
+        if (newCount < newEnd) {
+            reset(newCount);
+            return;
+        }
+        gap(events, newEnd, rowCount - oldEnd, newCount - newEnd);
+
+        // a reloaded page that still starts at its page boundary keeps its place, filled with what the reload
+        // found there. pages that moved get loaded again when they're looked at. anchors in the gaps can't be
+        // trusted anymore (rows can move around inside a gap without changing its size), only the checked ones stay
+        rowCount = newCount;
+        pages.clear();
+        loading.clear();
+        anchors.clear();
+        anchors.put(0, FIRST_KEY);
+        for (Reloaded r : reloaded) {
+            int n = Math.min(pageSize, r.fresh.keys.length);
+            if (r.newStart != r.page * pageSize || n == 0) {
+                continue;
+            }
+            pages.put(r.page, new Page(Arrays.copyOf(r.fresh.keys, n), Arrays.copyOf(r.fresh.rows, n)));
+            anchors.put(r.page, r.startKey);
+            if (n == pageSize) {
+                anchors.put(r.page + 1, r.fresh.keys[n - 1]);
+            }
+        }
+        generation++; // page loads that started during the refresh used the old anchors
+
+        for (int[] e : events) {
+            switch (e[0]) {
+                case INSERTED -> fireTableRowsInserted(e[1], e[2]);
+                case UPDATED -> fireTableRowsUpdated(e[1], e[2]);
+                default -> fireTableRowsDeleted(e[1], e[2]);
+            }
+        }
+    }
+
+    // a stretch of rows we have nothing cached for, only its size can be compared. the difference is
+    // announced at its end, nothing on screen there to keep in place anyway
+    private static void gap(List<int[]> events, int at, int oldSize, int newSize) {
+        if (newSize > oldSize) {
+            events.add(new int[] {INSERTED, at + oldSize, at + newSize - 1});
+        } else if (newSize < oldSize) {
+            events.add(new int[] {DELETED, at + newSize, at + oldSize - 1});
+        }
+    }
+
+    // adds a one-row event, or grows the previous one if it's the same kind and right next to it
+    private static void addEvent(List<int[]> events, int type, int row) {
+        int[] last = events.isEmpty() ? null : events.get(events.size() - 1);
+        if (last != null && last[0] == type) {
+            if (type == DELETED && last[1] == row) {
+                last[2]++; // deleting at the same index again = the next row
+                return;
+            }
+            if (type != DELETED && last[2] + 1 == row) {
+                last[2] = row;
+                return;
+            }
+        }
+        events.add(new int[] {type, row, row});
+    }
+
+    private Page toPage(List<T> rows) {
+        long[] keys = new long[rows.size()];
+        Object[][] mapped = new Object[rows.size()][];
+        for (int i = 0; i < rows.size(); i++) {
+            keys[i] = source.keyOf(rows.get(i));
+            mapped[i] = source.toRow(rows.get(i));
+        }
+        return new Page(keys, mapped);
+    }
+
+    private void requestPage(int page) {
+        if (!loading.add(page)) {
+            return;
+        }
+        int mine = generation;
+        Map.Entry<Integer, Long> known = anchors.floorEntry(page);
+        int knownPage = known.getKey();
+        long knownKey = known.getValue();
+
+        loader.execute(() -> {
+            if (mine != generation) {
+                return;
+            }
+            // walk the id index from the closest page we know the start of, without reading the rows in between
+            long after = knownKey;
+            if (knownPage < page) {
+                after = source.keyAt(knownKey, (page - knownPage) * pageSize - 1);
+            }
+            List<T> rows = after < 0 ? List.of() : source.page(after, pageSize);
+            long startKey = after;
+            long nextKey = rows.isEmpty() ? -1 : source.keyOf(rows.get(rows.size() - 1));
+            Page loaded = toPage(rows);
+
+            SwingUtilities.invokeLater(() -> {
+                if (mine != generation) {
+                    return;
+                }
+                loading.remove(page);
+                if (startKey >= 0) {
+                    anchors.put(page, startKey);
+                }
+                if (nextKey >= 0) {
+                    anchors.put(page + 1, nextKey);
+                }
+                pages.put(page, loaded);
+                int first = page * pageSize;
+                int last = Math.min(rowCount, first + pageSize) - 1;
+                if (last >= first) {
+                    fireTableRowsUpdated(first, last);
+                }
+            });
+        });
+    }
+}
@@ -0,0 +1,34 @@
+package frontend;
+
+import java.lang.management.ManagementFactory;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+
+// Startup milestones (main entered, first paint, db ready, first tab filled...), each printed as it
+// happens with the time since the JVM was launched, so JVM/class loading time is included.
+// Track "first paint" to see how long people stare at nothing after starting the app.
+public class StartupTimer {
+    private static final long JVM_START = ManagementFactory.getRuntimeMXBean().getStartTime();
+    private static final Map<String, Long> MARKS = new LinkedHashMap<>();
+
+    private StartupTimer() {}
+
+    // only the first mark with a given name counts, later ones are ignored
+    public static void mark(String name) {
+        long ms = System.currentTimeMillis() - JVM_START;
+        synchronized (MARKS) {
+            if (MARKS.putIfAbsent(name, ms) != null) {
+                return;
+            }
+        }
+        System.out.println(String.format(Locale.ROOT, "startup: %-20s %6dms", name, ms));
+    }
+
+    // milestone -> ms since JVM start, in the order they happened
+    public static Map<String, Long> marks() {
+        synchronized (MARKS) {
+            return new LinkedHashMap<>(MARKS);
+        }
+    }
+}
@@ -0,0 +1,125 @@
+package frontend;
+
+import java.awt.BorderLayout;
+import java.awt.FlowLayout;
+import java.awt.GridLayout;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.List;
+import java.util.Locale;
+
+import javax.swing.BorderFactory;
+import javax.swing.JButton;
+import javax.swing.JLabel;
+import javax.swing.JPanel;
+import javax.swing.JScrollPane;
+import javax.swing.JTable;
+import javax.swing.SwingUtilities;
+import javax.swing.table.DefaultTableModel;
+
+import backend.AsyncDBManager;
+import backend.DBManager;
+import models.CirculationStats;
+import models.DailyLoans;
+import models.LoanCount;
+
+// The Statistics tab: totals and utilization, the most borrowed books, the most active users and the loans
+// of the last DAYS days. Everything comes from the summary tables the loan triggers keep up to date
+// (SchemaMigrator.STATISTICS_TABLES), so a refresh is a few small index reads however long the history is.
+// refresh() runs off the EDT, LibraryGUI calls it when the tab gets selected and when loans change.
+public class StatisticsPanel extends JPanel {
+    private static final int TOP = 20;
+    private static final int DAYS = 30;
+    private static final DateTimeFormatter LAST_BORROWED = DateTimeFormatter.ofPattern("yyyy-MM-dd").withZone(ZoneId.systemDefault());
+
+    private final JLabel totals = new JLabel("Loading…");
+    private final DefaultTableModel books = readOnly("Title", "Loans", "Last borrowed");
+    private final DefaultTableModel users = readOnly("User", "Loans", "Last borrowed");
+    private final DefaultTableModel days = readOnly("Day", "Borrowed", "Returned");
+    private int generation; // only the newest refresh gets shown, only touched on the EDT
+
+    // everything one refresh shows, read together on one virtual thread
+    private static final class Snapshot {
+        CirculationStats totals;
+        List<LoanCount> books;
+        List<LoanCount> users;
+        List<DailyLoans> days;
+    }
+
+    public StatisticsPanel() {
+        super(new BorderLayout());
+
+        JPanel totalsPanel = new JPanel(new FlowLayout(FlowLayout.LEFT));
+        totalsPanel.add(totals);
+
+        JPanel tables = new JPanel(new GridLayout(1, 3, 5, 5));
+        tables.add(titled("Most borrowed books", books));
+        tables.add(titled("Most active users", users));
+        tables.add(titled("Last " + DAYS + " days (UTC)", days));
+
+        JButton refreshButton = new JButton("Refresh");
+        refreshButton.addActionListener(e -> refresh());
+
+        add(totalsPanel, BorderLayout.NORTH);
+        add(tables, BorderLayout.CENTER);
+        add(refreshButton, BorderLayout.SOUTH);
+    }
+
+    public void refresh() {
+        int mine = ++generation;
+        AsyncDBManager.read(() -> {
+            LocalDate today = LocalDate.now(ZoneOffset.UTC);
+            Snapshot s = new Snapshot();
+            s.totals = DBManager.getCirculationStats();
+            s.books = DBManager.getMostBorrowedBooks(TOP);
+            s.users = DBManager.getMostActiveUsers(TOP);
+            s.days = DBManager.getDailyLoans(today.minusDays(DAYS - 1), today);
+            return s;
+        }).thenAccept(s -> SwingUtilities.invokeLater(() -> {
+            if (mine == generation) {
+                show(s);
+            }
+        }));
+    }
+
+    private void show(Snapshot s) {
+        totals.setText(String.format(Locale.ROOT, "%,d books, %,d loans so far, %,d lent out right now (%.1f%% of the books)",
+                s.totals.getBooks(), s.totals.getLoans(), s.totals.getOpenLoans(), s.totals.getUtilization() * 100));
+        books.setRowCount(0);
+        for (LoanCount c : s.books) {
+            books.addRow(new Object[]{c.getName(), c.getLoans(), lastBorrowed(c.getLastBorrowed())});
+        }
+        users.setRowCount(0);
+        for (LoanCount c : s.users) {
+            users.addRow(new Object[]{c.getName(), c.getLoans(), lastBorrowed(c.getLastBorrowed())});
+        }
+        days.setRowCount(0);
+        for (int i = s.days.size() - 1; i >= 0; i--) { // newest on top
+            DailyLoans d = s.days.get(i);
+            days.addRow(new Object[]{d.getDay(), d.getBorrowed(), d.getReturned()});
+        }
+    }
+
+    private static String lastBorrowed(Instant time) {
+        return time == null ? "" : LAST_BORROWED.format(time);
+    }
+
+    private static JPanel titled(String title, DefaultTableModel model) {
+        JPanel panel = new JPanel(new BorderLayout());
+        panel.setBorder(BorderFactory.createTitledBorder(title));
+        panel.add(new JScrollPane(new JTable(model)), BorderLayout.CENTER);
+        return panel;
+    }
+
+    private static DefaultTableModel readOnly(String... columns) {
+        return new DefaultTableModel(columns, 0) {
+            @Override
+            public boolean isCellEditable(int row, int column) {
+                return false;
+            }
+        };
+    }
+}
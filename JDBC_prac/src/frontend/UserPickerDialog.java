@@ -0,0 +1,156 @@
+package frontend;
+
+import java.awt.BorderLayout;
+import java.awt.Component;
+import java.awt.FlowLayout;
+import java.awt.Window;
+import java.awt.event.ActionEvent;
+import java.awt.event.KeyEvent;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
+import java.util.List;
+
+import javax.swing.AbstractAction;
+import javax.swing.BorderFactory;
+import javax.swing.DefaultListCellRenderer;
+import javax.swing.DefaultListModel;
+import javax.swing.JButton;
+import javax.swing.JComponent;
+import javax.swing.JDialog;
+import javax.swing.JLabel;
+import javax.swing.JList;
+import javax.swing.JPanel;
+import javax.swing.JScrollPane;
+import javax.swing.JTextField;
+import javax.swing.KeyStroke;
+import javax.swing.ListSelectionModel;
+import javax.swing.SwingUtilities;
+
+import backend.DBManager;
+import models.User;
+
+// "Who's borrowing?" dialog. Instead of a dropdown with every user it looks them up as you type
+// (name, email or id prefix, see DBManager.lookupUsers) and shows at most MAX_RESULTS matches, so it opens
+// instantly and costs the same with 30 or 300k users. The lookup runs off the EDT through DebouncedSearch.
+// Up/down move through the results, enter or double click picks one, escape cancels.
+public class UserPickerDialog extends JDialog {
+    private static final int MAX_RESULTS = 50;
+    private static final int SEARCH_DELAY_MS = 150;
+    private static final String HINT = "Type a name, email or user ID";
+
+    private final JTextField field = new JTextField(28);
+    private final DefaultListModel<User> results = new DefaultListModel<>();
+    private final JList<User> list = new JList<>(results);
+    private final JLabel status = new JLabel(HINT);
+    private final JButton okButton = new JButton("OK");
+    private User picked;
+
+    private UserPickerDialog(Window owner, String title) {
+        super(owner, title, ModalityType.APPLICATION_MODAL);
+
+        list.setSelectionMode(ListSelectionModel.SINGLE_SELECTION);
+        list.setVisibleRowCount(12);
+        list.setCellRenderer(new DefaultListCellRenderer() {
+            @Override
+            public Component getListCellRendererComponent(JList<?> l, Object value, int index, boolean selected, boolean focus) {
+                User u = (User) value;
+                String text = u.getId() + " - " + u.getFirstName() + " " + u.getLastName() + "  <" + u.getEmail() + ">";
+                return super.getListCellRendererComponent(l, text, index, selected, focus);
+            }
+        });
+        list.addListSelectionListener(e -> okButton.setEnabled(list.getSelectedValue() != null));
+        list.addMouseListener(new MouseAdapter() {
+            @Override
+            public void mouseClicked(MouseEvent e) {
+                if (e.getClickCount() == 2) {
+                    pick();
+                }
+            }
+        });
+
+        new DebouncedSearch<>(field, status, SEARCH_DELAY_MS,
+                text -> DBManager.lookupUsers(text, MAX_RESULTS), this::showResults, () -> {
+                    results.clear();
+                    status.setText(HINT);
+                });
+
+        // the focus stays in the text field, the arrow keys still move through the list
+        bindKey(field, KeyEvent.VK_DOWN, "next", () -> moveSelection(1));
+        bindKey(field, KeyEvent.VK_UP, "previous", () -> moveSelection(-1));
+        bindKey(getRootPane(), KeyEvent.VK_ENTER, "pick", this::pick);
+        bindKey(getRootPane(), KeyEvent.VK_ESCAPE, "cancel", this::dispose);
+
+        okButton.setEnabled(false);
+        okButton.addActionListener(e -> pick());
+        JButton cancelButton = new JButton("Cancel");
+        cancelButton.addActionListener(e -> dispose());
+
+        JPanel searchPanel = new JPanel(new BorderLayout(5, 5));
+        searchPanel.add(new JLabel("User: "), BorderLayout.WEST);
+        searchPanel.add(field, BorderLayout.CENTER);
+        searchPanel.add(status, BorderLayout.SOUTH);
+
+        JPanel buttonPanel = new JPanel(new FlowLayout(FlowLayout.RIGHT));
+        buttonPanel.add(okButton);
+        buttonPanel.add(cancelButton);
+
+        JPanel content = new JPanel(new BorderLayout(5, 5));
+        content.setBorder(BorderFactory.createEmptyBorder(10, 10, 10, 10));
+        content.add(searchPanel, BorderLayout.NORTH);
+        content.add(new JScrollPane(list), BorderLayout.CENTER);
+        content.add(buttonPanel, BorderLayout.SOUTH);
+        setContentPane(content);
+        pack();
+        setLocationRelativeTo(owner);
+    }
+
+    // blocks until the dialog is closed. null if nothing was picked
+    public static User pick(Component parent, String title) {
+        Window owner = parent instanceof Window w ? w : parent == null ? null : SwingUtilities.getWindowAncestor(parent);
+        UserPickerDialog dialog = new UserPickerDialog(owner, title);
+        dialog.setVisible(true);
+        return dialog.picked;
+    }
+
+    private void showResults(List<User> users) {
+        results.clear();
+        results.addAll(users);
+        if (!users.isEmpty()) {
+            list.setSelectedIndex(0);
+        }
+        if (users.isEmpty()) {
+            status.setText("No matching users");
+        } else if (users.size() >= MAX_RESULTS) {
+            status.setText("First " + MAX_RESULTS + " matches, keep typing to narrow it down");
+        } else {
+            status.setText(users.size() == 1 ? "1 match" : users.size() + " matches");
+        }
+    }
+
+    private void moveSelection(int delta) {
+        if (results.isEmpty()) {
+            return;
+        }
+        int index = Math.max(0, Math.min(results.size() - 1, list.getSelectedIndex() + delta));
+        list.setSelectedIndex(index);
+        list.ensureIndexIsVisible(index);
+    }
+
+    private void pick() {
+        User selected = list.getSelectedValue();
+        if (selected != null) {
+            picked = selected;
+            dispose();
+        }
+    }
+
+    private static void bindKey(JComponent component, int key, String name, Runnable action) {
+        component.getInputMap(JComponent.WHEN_IN_FOCUSED_WINDOW).put(KeyStroke.getKeyStroke(key, 0), name);
+        component.getActionMap().put(name, new AbstractAction() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                action.run();
+            }
+        });
+    }
+}
@@ -1,14 +1,23 @@
 package models;
 
+import java.time.Instant;
+
 public class BorrowedBook {
+    private int loanId;
     private int id;
     private String title;
     private String author;
     private String borrowerName;
-    private String borrowDate;
-    private String returnDate;
+    private Instant borrowDate;
+    private Instant returnDate; // null while the book is still out
+
+    public BorrowedBook(int id, String title, String author, String borrowerName, Instant borrowDate, Instant returnDate) {
+        this(0, id, title, author, borrowerName, borrowDate, returnDate);
+    }
 
-    public BorrowedBook(int id, String title, String author, String borrowerName, String borrowDate, String returnDate) {
+    // loanId is the borrowed_books row id, id is still the book id
+    public BorrowedBook(int loanId, int id, String title, String author, String borrowerName, Instant borrowDate, Instant returnDate) {
+        this.loanId = loanId;
         this.id = id;
         this.title = title;
         this.author = author;
@@ -17,10 +26,12 @@ public class BorrowedBook {
         this.returnDate = returnDate;
     }
 
+    public int getLoanId() { return loanId; }
     public int getId() { return id; }
     public String getTitle() { return title; }
     public String getAuthor() { return author; }
     public String getBorrowerName() { return borrowerName; }
-    public String getBorrowDate() { return borrowDate; }
-    public String getReturnDate() { return returnDate; }
+    public Instant getBorrowDate() { return borrowDate; }
+    public Instant getReturnDate() { return returnDate; }
+    public boolean isReturned() { return returnDate != null; }
 }
@@ -0,0 +1,20 @@
+package models;
+
+// library-wide totals: every loan ever made, the ones out right now, and what share of the books that is
+public class CirculationStats {
+    private long books;
+    private long loans;
+    private long openLoans;
+
+    public CirculationStats(long books, long loans, long openLoans) {
+        this.books = books;
+        this.loans = loans;
+        this.openLoans = openLoans;
+    }
+
+    public long getBooks() { return books; }
+    public long getLoans() { return loans; }
+    public long getOpenLoans() { return openLoans; }
+    // 0..1, share of the books lent out right now
+    public double getUtilization() { return books == 0 ? 0 : (double) openLoans / books; }
+}
@@ -0,0 +1,20 @@
+package models;
+
+import java.time.LocalDate;
+
+// loans made and returned on one day (UTC)
+public class DailyLoans {
+    private LocalDate day;
+    private long borrowed;
+    private long returned;
+
+    public DailyLoans(LocalDate day, long borrowed, long returned) {
+        this.day = day;
+        this.borrowed = borrowed;
+        this.returned = returned;
+    }
+
+    public LocalDate getDay() { return day; }
+    public long getBorrowed() { return borrowed; }
+    public long getReturned() { return returned; }
+}
@@ -0,0 +1,24 @@
+package models;
+
+import java.time.Instant;
+
+// one row of a "most borrowed" list: a book (name = title) or a user (name = full name) and how often
+// it was borrowed, archived loans included
+public class LoanCount {
+    private int id;
+    private String name;
+    private long loans;
+    private Instant lastBorrowed;
+
+    public LoanCount(int id, String name, long loans, Instant lastBorrowed) {
+        this.id = id;
+        this.name = name;
+        this.loans = loans;
+        this.lastBorrowed = lastBorrowed;
+    }
+
+    public int getId() { return id; }
+    public String getName() { return name; }
+    public long getLoans() { return loans; }
+    public Instant getLastBorrowed() { return lastBorrowed; }
+}
@@ -8,4 +8,9 @@ module JDBC_prac {
 	requires com.formdev.flatlaf;
 	requires java.sql;
 	requires java.desktop;
+	requires java.management;
+	requires jdk.jfr;
+
+	// QueryMetrics MXBean, JMX calls its getters reflectively
+	exports backend to java.management;
 }
\ No newline at end of file